@@ -0,0 +1,87 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of the conversion of many short messages from different
+ *  rotor positions, one at a time and one per vector lane.
+ *  @author Bradley Tian
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class LaneEngineBenchmark {
+
+    /** The engine measured: LaneEngine, or the VectorLaneEngine that
+     *  LaneEngine.create returns when asked for one. */
+    @Param({ "scalar", "lanes" })
+    public String engine;
+
+    /** Number of characters in each message. */
+    @Param({ "16", "256" })
+    public int length;
+
+    /** Number of messages. */
+    static final int COUNT = 8192;
+
+    /** Build the engine over the naval rotors B, Beta, III, IV and I,
+     *  and random messages and positions. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = TestUtils.UPPER;
+        Machine machine = TestUtils.machine();
+        machine.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        machine.setRotors("AAAA");
+        CompiledMachine layout = machine.compile().copy();
+        _engine = LaneEngine.create(layout, engine.equals("lanes"));
+        if (engine.equals("lanes") && _engine.lanes() == 1) {
+            throw new IllegalStateException("run 'make vector' first");
+        }
+
+        Random random = new Random(61);
+        _messages = new int[COUNT][length];
+        _work = new int[COUNT][length];
+        _positions = new int[COUNT][machine.numRotors()];
+        for (int k = 0; k < COUNT; k++) {
+            for (int i = 1; i < _positions[k].length; i++) {
+                _positions[k][i] = random.nextInt(alpha.size());
+            }
+            for (int t = 0; t < length; t++) {
+                _messages[k][t] = random.nextInt(alpha.size());
+            }
+        }
+    }
+
+    /** Convert all the messages. */
+    @Benchmark
+    public int[][] convert() {
+        for (int k = 0; k < COUNT; k++) {
+            System.arraycopy(_messages[k], 0, _work[k], 0, length);
+        }
+        _engine.convert(_work, _positions);
+        return _work;
+    }
+
+    /** The engine measured. */
+    private LaneEngine _engine;
+
+    /** The messages, as alphabet indices. */
+    private int[][] _messages;
+
+    /** The messages being converted. */
+    private int[][] _work;
+
+    /** The starting rotor positions of each message. */
+    private int[][] _positions;
+}
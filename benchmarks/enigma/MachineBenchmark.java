@@ -0,0 +1,79 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of the conversions of a complete Machine, for single
+ *  characters and for messages from a few characters to several
+ *  megabytes long.
+ *  @author Bradley Tian
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MachineBenchmark {
+
+    /** A random message of upper-case letters. */
+    @State(Scope.Benchmark)
+    public static class Message {
+
+        /** Number of characters in the message. */
+        @Param({ "24", "4194304" })
+        public int length;
+
+        /** Generate the message. */
+        @Setup
+        public void setUp() {
+            Random random = new Random(61);
+            char[] msg = new char[length];
+            for (int i = 0; i < length; i++) {
+                msg[i] = (char) ('A' + random.nextInt(26));
+            }
+            text = new String(msg);
+        }
+
+        /** The message. */
+        String text;
+    }
+
+    /** Build a machine with the naval rotors B, Beta, III, IV and I. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = TestUtils.UPPER;
+        _machine = TestUtils.machine();
+        _machine.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        _machine.setRotors("AXLE");
+        _machine.setRings("BCDE");
+        _machine.setPlugboard(
+                new Permutation("(HQ) (EX) (IP) (TR) (BY)", alpha));
+    }
+
+    /** Convert a single character. */
+    @Benchmark
+    public int convertChar() {
+        _next = _machine.convert(_next);
+        return _next;
+    }
+
+    /** Convert the whole of MSG. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String convertMessage(Message msg) {
+        return _machine.convert(msg.text);
+    }
+
+    /** The machine measured. */
+    private Machine _machine;
+
+    /** The character converted next by convertChar. */
+    private int _next;
+}
@@ -0,0 +1,74 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** End-to-end benchmark of Main: reading testing/correct/default.conf,
+ *  then processing a file of messages into an output file.
+ *  @author Bradley Tian
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MainBenchmark {
+
+    /** Number of message lines in the input file. */
+    @Param({ "1", "100000" })
+    public int lines;
+
+    /** Write an input file of LINES random 60-letter message lines,
+     *  after a setting line for the configuration. */
+    @Setup
+    public void setUp() throws IOException {
+        _input = File.createTempFile("enigma", ".in");
+        _output = File.createTempFile("enigma", ".out");
+        Random random = new Random(61);
+        try (PrintWriter out = new PrintWriter(_input)) {
+            out.println("* B Beta III IV I AXLE BCDE (HQ) (EX) (IP) (TR)");
+            for (int i = 0; i < lines; i++) {
+                for (int k = 0; k < LINE_LENGTH; k++) {
+                    out.print((char) ('A' + random.nextInt(26)));
+                }
+                out.println();
+            }
+        }
+    }
+
+    /** Remove the input and output files. */
+    @TearDown
+    public void tearDown() {
+        _input.delete();
+        _output.delete();
+    }
+
+    /** Run Main on the configuration and input file. */
+    @Benchmark
+    public void process() {
+        Main.main(CONFIG, _input.getPath(), _output.getPath());
+    }
+
+    /** The configuration file, relative to the benchmarks directory. */
+    static final String CONFIG = "../testing/correct/default.conf";
+
+    /** Number of letters in each message line. */
+    static final int LINE_LENGTH = 60;
+
+    /** The input file. */
+    private File _input;
+
+    /** The output file. */
+    private File _output;
+}
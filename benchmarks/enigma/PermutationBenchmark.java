@@ -0,0 +1,49 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of the integer mappings of Permutation.
+ *  @author Bradley Tian
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermutationBenchmark {
+
+    /** Build the permutation of rotor I. */
+    @Setup
+    public void setUp() {
+        _perm = new Permutation(TestUtils.NAVALA.get("I"), new Alphabet());
+    }
+
+    /** Apply the permutation to every index of its alphabet. */
+    @Benchmark
+    public int permute() {
+        int sum = 0;
+        for (int c = 0; c < _perm.size(); c++) {
+            sum += _perm.permute(c);
+        }
+        return sum;
+    }
+
+    /** Apply the inverse permutation to every index of its alphabet. */
+    @Benchmark
+    public int invert() {
+        int sum = 0;
+        for (int c = 0; c < _perm.size(); c++) {
+            sum += _perm.invert(c);
+        }
+        return sum;
+    }
+
+    /** The permutation measured. */
+    private Permutation _perm;
+}
@@ -0,0 +1,52 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of the conversions of a single Rotor.
+ *  @author Bradley Tian
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RotorBenchmark {
+
+    /** Build rotor I, away from its 0 setting. */
+    @Setup
+    public void setUp() {
+        _rotor = new MovingRotor("I",
+                new Permutation(TestUtils.NAVALA.get("I"), new Alphabet()),
+                "Q");
+        _rotor.set('K');
+    }
+
+    /** Convert every index of the alphabet forward through the rotor. */
+    @Benchmark
+    public int convertForward() {
+        int sum = 0;
+        for (int c = 0; c < _rotor.size(); c++) {
+            sum += _rotor.convertForward(c);
+        }
+        return sum;
+    }
+
+    /** Convert every index of the alphabet backward through the rotor. */
+    @Benchmark
+    public int convertBackward() {
+        int sum = 0;
+        for (int c = 0; c < _rotor.size(); c++) {
+            sum += _rotor.convertBackward(c);
+        }
+        return sum;
+    }
+
+    /** The rotor measured. */
+    private Rotor _rotor;
+}
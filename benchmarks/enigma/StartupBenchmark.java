@@ -0,0 +1,99 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Wall-clock time of a complete CLI invocation of Main in a new JVM,
+ *  converting testing/correct/trivial.in, which is dominated by JVM
+ *  startup and class loading.
+ *  @author Bradley Tian
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StartupBenchmark {
+
+    /** How Main is launched: from the compiled classes, from the jar
+     *  built by 'make cds', or from the jar with the class-data-sharing
+     *  archive built by 'make cds'. */
+    @Param({ "classes", "jar", "cds" })
+    public String launch;
+
+    /** Build the command line for LAUNCH. */
+    @Setup
+    public void setUp() throws IOException {
+        _output = File.createTempFile("enigma", ".out");
+        String java = Paths.get(System.getProperty("java.home"), "bin",
+                "java").toString();
+        String classPath = System.getProperty("java.class.path");
+        String jarPath = new File(JAR).getAbsolutePath()
+                + File.pathSeparator + System.getenv().getOrDefault(
+                        "CLASSPATH", "");
+        _command = new ArrayList<>();
+        _command.add(java);
+        if (!launch.equals("classes")) {
+            if (!new File(JAR).exists() || !new File(ARCHIVE).exists()) {
+                throw new IllegalStateException("run 'make cds' first");
+            }
+            classPath = jarPath;
+        }
+        if (launch.equals("cds")) {
+            _command.add("-Xshare:on");
+            _command.add("-XX:SharedArchiveFile=" + ARCHIVE);
+        }
+        _command.add("-cp");
+        _command.add(classPath);
+        _command.add("enigma.Main");
+        _command.add(MainBenchmark.CONFIG);
+        _command.add(INPUT);
+        _command.add(_output.getPath());
+    }
+
+    /** Remove the output file. */
+    @TearDown
+    public void tearDown() {
+        _output.delete();
+    }
+
+    /** Run Main in a new JVM and wait for it to finish. */
+    @Benchmark
+    public int launch() throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(_command).inheritIO().start();
+        int status = process.waitFor();
+        if (status != 0) {
+            throw new IllegalStateException("Main exited with " + status);
+        }
+        return status;
+    }
+
+    /** The input file, relative to the benchmarks directory. */
+    static final String INPUT = "../testing/correct/trivial.in";
+
+    /** The jar built by 'make cds', relative to the benchmarks
+     *  directory. */
+    static final String JAR = "../enigma.jar";
+
+    /** The archive built by 'make cds', relative to the benchmarks
+     *  directory. */
+    static final String ARCHIVE = "../enigma.jsa";
+
+    /** The output file. */
+    private File _output;
+
+    /** The command launching Main. */
+    private List<String> _command;
+}
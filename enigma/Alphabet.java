@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.error;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
@@ -17,6 +19,36 @@ class Alphabet {
                 throw error("Illegal character in alphabet.");
             }
         }
+        _chars = chars.toCharArray();
+
+        int max = 0;
+        for (char ch : _chars) {
+            max = Math.max(max, ch);
+        }
+        if (max < Math.max(DENSE_LIMIT, DENSE_FACTOR * _chars.length)) {
+            _dense = new int[max + 1];
+            Arrays.fill(_dense, -1);
+            for (int i = 0; i < _chars.length; i++) {
+                if (_dense[_chars[i]] != -1) {
+                    throw error("Duplicate character in alphabet.");
+                }
+                _dense[_chars[i]] = i;
+            }
+        } else {
+            int capacity = Integer.highestOneBit(
+                    Math.max(1, 2 * _chars.length - 1)) << 1;
+            _keys = new char[capacity];
+            _values = new int[capacity];
+            Arrays.fill(_values, -1);
+            for (int i = 0; i < _chars.length; i++) {
+                int slot = slot(_chars[i]);
+                if (_values[slot] != -1) {
+                    throw error("Duplicate character in alphabet.");
+                }
+                _keys[slot] = _chars[i];
+                _values[slot] = i;
+            }
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -26,29 +58,71 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return alphabet.length();
+        return _chars.length;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return alphabet.contains(Character.toString(ch));
+        return toInt(ch) != -1;
     }
 
     /** Returns character number INDEX in the alphabet, where
      *  0 <= INDEX < size(). */
     char toChar(int index) {
-        return alphabet.charAt(index);
+        return _chars[index];
     }
 
     /** Returns the index of character CH which must be in
-     *  the alphabet. This is the inverse of toChar(). */
+     *  the alphabet. This is the inverse of toChar(). Returns -1
+     *  if CH is not in the alphabet. */
     int toInt(char ch) {
-        return alphabet.indexOf(ch);
+        if (_dense != null) {
+            return ch < _dense.length ? _dense[ch] : -1;
+        }
+        return _values[slot(ch)];
+    }
+
+    /** Returns the slot of the open-addressed table holding CH, or the
+     *  empty slot at which CH would be placed. */
+    private int slot(char ch) {
+        int mask = _keys.length - 1;
+        int slot = (ch * HASH_MULTIPLIER) >>> HASH_SHIFT & mask;
+        while (_values[slot] != -1 && _keys[slot] != ch) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
     }
 
+    /** Characters below this value are always indexed through a dense
+     *  table. */
+    private static final int DENSE_LIMIT = 256;
+
+    /** A dense table is also used when it is at most this many times
+     *  larger than the alphabet. */
+    private static final int DENSE_FACTOR = 8;
+
+    /** Multiplier used to scatter characters over the sparse table. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B1;
+
+    /** Shift applied after scattering, keeping the high-order bits. */
+    private static final int HASH_SHIFT = 16;
+
     /** The alphabet in string form. */
     private String alphabet;
 
+    /** The characters of the alphabet, by index. */
+    private char[] _chars;
+
+    /** Index of each character, by character code, or -1; null when the
+     *  alphabet is too sparse to index densely. */
+    private int[] _dense;
+
+    /** Keys of the open-addressed table used for sparse alphabets. */
+    private char[] _keys;
+
+    /** Indices for _keys, or -1 for empty slots. */
+    private int[] _values;
+
     /** List of forbidden characters. */
     private String[] forbidden = {" ", "(", ")", "*"};
 }
@@ -0,0 +1,189 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Processes many input files against one configuration, which is read
+ * only once.  Each input file is converted exactly as by Main with that
+ * file as input and the corresponding file in an output directory as
+ * output, so the outputs are identical to those of single-file runs.
+ * Files are processed concurrently, each thread reusing one machine for
+ * all the files it handles.  An error in one file is reported and does
+ * not stop the others.
+ *
+ * @author Bradley Tian
+ */
+class Batch {
+
+    /** A batch converting files with machines of TEMPLATE, using
+     *  THREADS threads. */
+    Batch(MachineTemplate template, int threads) {
+        if (threads < 1) {
+            throw error("Thread count must be positive.");
+        }
+        _template = template;
+        _threads = threads;
+    }
+
+    /**
+     * Convert each of INPUTS into the file of the same name in OUTPUTDIR,
+     * with a final ".in" replaced by ".out", or ".out" appended
+     * otherwise.  Return the errors found, as messages keyed by input
+     * file.
+     */
+    Map<Path, String> run(List<Path> inputs, Path outputDir) {
+        HashSet<Path> outputs = new HashSet<>();
+        for (Path input : inputs) {
+            if (!outputs.add(output(input, outputDir))) {
+                throw error("Duplicate output file for %s", input);
+            }
+        }
+        _files.set(0);
+        _bytes.set(0);
+        Map<Path, String> errors = new TreeMap<>();
+        ThreadLocal<Machine> machines =
+                ThreadLocal.withInitial(_template::machine);
+        ForkJoinPool pool = new ForkJoinPool(_threads);
+        try {
+            pool.submit(() -> inputs.parallelStream().forEach(input -> {
+                Machine machine = machines.get();
+                machine.setPlugboard(_template.noPlugboard());
+                Path output = output(input, outputDir);
+                try {
+                    Main.processFiles(machine, input.toString(),
+                            output.toString());
+                    _bytes.addAndGet(Files.size(input));
+                } catch (EnigmaException | IOException excp) {
+                    synchronized (errors) {
+                        errors.put(input, excp.getMessage());
+                    }
+                }
+                _files.incrementAndGet();
+            })).get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("Batch interrupted.");
+        } catch (ExecutionException excp) {
+            throw error("Batch failed: %s", excp.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return errors;
+    }
+
+    /** Return the number of files processed by the last run so far. */
+    long files() {
+        return _files.get();
+    }
+
+    /** Return the number of input bytes converted without error by the
+     *  last run so far. */
+    long bytes() {
+        return _bytes.get();
+    }
+
+    /** Return the output file in OUTPUTDIR for INPUT. */
+    static Path output(Path input, Path outputDir) {
+        String name = input.getFileName().toString();
+        if (name.endsWith(".in")) {
+            name = name.substring(0, name.length() - ".in".length());
+        }
+        return outputDir.resolve(name + ".out");
+    }
+
+    /**
+     * Return the input files named by SOURCE: the regular files in it,
+     * in order of name, if it is a directory, and otherwise the files
+     * listed in it one per line, blank lines ignored, relative names
+     * being taken relative to the manifest's directory.
+     */
+    static List<Path> inputs(Path source) throws IOException {
+        if (Files.isDirectory(source)) {
+            try (Stream<Path> files = Files.list(source)) {
+                return files.filter(Files::isRegularFile).sorted()
+                        .collect(Collectors.toList());
+            }
+        }
+        Path base = source.toAbsolutePath().getParent();
+        List<Path> result = new ArrayList<>();
+        for (String line : Files.readAllLines(source)) {
+            if (!line.isBlank()) {
+                result.add(base.resolve(line.strip()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Convert the input files named by ARGS[1], a directory or manifest
+     * (see inputs), with the configuration in the file ARGS[0], writing
+     * the outputs into the directory ARGS[2], created if need be.
+     * ARGS[3], if present, is the number of threads, by default the
+     * number of processors.  Errors and aggregate throughput are
+     * reported on the standard error; exits with code 1 if any file was
+     * in error.
+     */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("Usage: java enigma.Batch CONFIG "
+                        + "INPUTDIR|MANIFEST OUTPUTDIR [THREADS]");
+            }
+            int threads = Runtime.getRuntime().availableProcessors();
+            if (args.length == 4) {
+                threads = Integer.parseInt(args[3]);
+            }
+            List<Path> inputs = inputs(Paths.get(args[1]));
+            Path outputDir = Paths.get(args[2]);
+            Files.createDirectories(outputDir);
+            Batch batch = new Batch(
+                    new MachineTemplate(Main.readConfig(args[0])), threads);
+            long start = System.nanoTime();
+            Map<Path, String> errors = batch.run(inputs, outputDir);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            for (Map.Entry<Path, String> entry : errors.entrySet()) {
+                System.err.printf("Error: %s: %s%n", entry.getKey(),
+                        entry.getValue());
+            }
+            System.err.printf("%d files (%d in error), %d bytes in %.3f s "
+                    + "(%.0f files/s, %.1f MB/s)%n", batch.files(),
+                    errors.size(), batch.bytes(), seconds,
+                    batch.files() / seconds, batch.bytes() / seconds / 1e6);
+            if (errors.isEmpty()) {
+                return;
+            }
+        } catch (IOException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** The configuration of my machines. */
+    private final MachineTemplate _template;
+
+    /** Number of threads converting files. */
+    private final int _threads;
+
+    /** Number of files processed by the current or last run. */
+    private final AtomicLong _files = new AtomicLong();
+
+    /** Number of input bytes converted by the current or last run. */
+    private final AtomicLong _bytes = new AtomicLong();
+}
@@ -0,0 +1,96 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author Bradley Tian
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** Delete DIR and everything in it. */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>)
+                    files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-batch");
+        try {
+            Path config = dir.resolve("default.conf");
+            Files.writeString(config, TestUtils.CONFIG);
+            Path inputs = Files.createDirectory(dir.resolve("in"));
+            for (int k = 0; k < 20; k++) {
+                Files.writeString(inputs.resolve(String.format("m%02d.in", k)),
+                        String.format("* B Beta III IV I A%sLE (YF) (ZH)%n"
+                        + "HELLO WORLD %s%n%n* B Beta I II III ZZZZ%n%s%n",
+                        (char) ('A' + k), "ABCDEFGHIJ".repeat(k),
+                        "QWERTY".repeat(100 * k)));
+            }
+            Files.writeString(inputs.resolve("plain"),
+                    String.format("* B Beta III IV I AXLE%nFROM HIS%n"));
+            Files.writeString(inputs.resolve("bad.in"), String.format(
+                    "* B Beta III IV I AXLE (YF)%nHELLO%n"
+                    + "* B Beta I%nWORLD%n"));
+
+            Path outputs = dir.resolve("out");
+            Files.createDirectory(outputs);
+            List<Path> files = Batch.inputs(inputs);
+            assertEquals(22, files.size());
+            MachineTemplate template =
+                    new MachineTemplate(Main.readConfig(config.toString()));
+            Batch batch = new Batch(template, 4);
+            Map<Path, String> errors = batch.run(files, outputs);
+            assertEquals(Map.of(inputs.resolve("bad.in"),
+                    "Input setting truncated."), errors);
+            assertEquals(22, batch.files());
+
+            Path expected = Files.createDirectory(dir.resolve("expected"));
+            for (Path input : files) {
+                Path output = Batch.output(input, expected);
+                try {
+                    Main.processFiles(Main.readConfig(config.toString()),
+                            input.toString(), output.toString());
+                } catch (EnigmaException excp) {
+                    assertEquals(inputs.resolve("bad.in"), input);
+                }
+                assertEquals(input.toString(), Files.readString(output),
+                        Files.readString(Batch.output(input, outputs)));
+            }
+            assertTrue(Files.exists(outputs.resolve("plain.out")));
+
+            Path manifest = dir.resolve("manifest");
+            Files.writeString(manifest, String.format("in/m03.in%n%n%s%n",
+                    inputs.resolve("plain")));
+            assertEquals(List.of(inputs.resolve("m03.in"),
+                    inputs.resolve("plain")), Batch.inputs(manifest));
+            try {
+                batch.run(List.of(inputs.resolve("m03.in"),
+                        dir.resolve("m03")), outputs);
+                fail("Duplicate output file not detected.");
+            } catch (EnigmaException excp) {
+                return;
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A MessageProcessor for input and output, such as the standard input
+ * and output, pipes and devices, that can be read and written only as
+ * streams of bytes, and an alphabet of single-byte (ASCII) characters.
+ * Bytes are read from a channel into a fixed-size buffer, classified
+ * through the same 256-entry table as MappedMessageProcessor uses,
+ * converted by a CompiledMachine and written through a GroupWriter.
+ * No bytes are decoded to or encoded from chars.
+ *
+ * @author Bradley Tian
+ */
+class ByteMessageProcessor extends MessageProcessor {
+
+    /**
+     * A processor that applies setting lines read from INPUT to MACHINE
+     * and writes the conversion of each message line to OUTPUT in the
+     * format of Main.  The alphabet of MACHINE must be supported by
+     * MappedMessageProcessor.
+     */
+    ByteMessageProcessor(Machine machine, ReadableByteChannel input,
+                         WritableByteChannel output) {
+        this(machine, input, new GroupWriter(output));
+    }
+
+    /**
+     * A processor that applies setting lines read from INPUT to MACHINE
+     * and writes the conversion of each message line through OUTPUT.
+     * The alphabet of MACHINE must be supported by
+     * MappedMessageProcessor.
+     */
+    ByteMessageProcessor(Machine machine, ReadableByteChannel input,
+                         GroupWriter output) {
+        super(machine);
+        _input = input;
+        _output = output;
+        _codes = MappedMessageProcessor.codes(_alphabet);
+        _bytes = MappedMessageProcessor.bytes(_alphabet);
+        _buffer = new byte[BUFFER_SIZE];
+    }
+
+    @Override
+    void messageLine() throws IOException {
+        CompiledMachine engine = _machine.compile();
+        byte[] buffer = _buffer;
+        try {
+            while (_pos < _limit || fill()) {
+                int code = _codes[buffer[_pos++]
+                        & MappedMessageProcessor.BYTE_MASK];
+                if (code >= -1) {
+                    _output.put(_bytes[engine.convert(code)]);
+                } else if (code == MappedMessageProcessor.SKIP) {
+                    continue;
+                } else if (code == MappedMessageProcessor.NEWLINE) {
+                    break;
+                } else if (code == MappedMessageProcessor.RETURN) {
+                    skipNewline();
+                    break;
+                } else {
+                    throw error("input elements "
+                            + "not contained within alphabet.");
+                }
+            }
+        } finally {
+            engine.store(_machine);
+        }
+        writeLines(1);
+    }
+
+    @Override
+    int read() throws IOException {
+        if (_pos == _limit && !fill()) {
+            return -1;
+        }
+        return _buffer[_pos++] & MappedMessageProcessor.BYTE_MASK;
+    }
+
+    @Override
+    int peek() throws IOException {
+        if (_pos == _limit && !fill()) {
+            return -1;
+        }
+        return _buffer[_pos] & MappedMessageProcessor.BYTE_MASK;
+    }
+
+    @Override
+    void unread() {
+        _pos -= 1;
+    }
+
+    @Override
+    void writeLines(int n) throws IOException {
+        _output.newLines(n);
+    }
+
+    @Override
+    void flush() throws IOException {
+        _output.flush();
+    }
+
+    /** Refill the input buffer, returning false at the end of input. */
+    private boolean fill() throws IOException {
+        ByteBuffer space = ByteBuffer.wrap(_buffer);
+        int n;
+        do {
+            n = _input.read(space);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        _pos = 0;
+        _limit = n;
+        return true;
+    }
+
+    /** Size of the input buffer. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Source of settings and messages. */
+    private final ReadableByteChannel _input;
+
+    /** Destination of converted messages. */
+    private final GroupWriter _output;
+
+    /** For each byte, its code, as in MappedMessageProcessor. */
+    private final int[] _codes;
+
+    /** The alphabet, as bytes. */
+    private final byte[] _bytes;
+
+    /** Input buffer, holding _buffer[_pos.._limit-1] still unread. */
+    private final byte[] _buffer;
+
+    /** Index of the next unread byte in _buffer. */
+    private int _pos;
+
+    /** Number of valid bytes in _buffer. */
+    private int _limit;
+}
@@ -0,0 +1,164 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A MessageProcessor reading characters from a Reader through a
+ * fixed-size buffer and writing to a Writer.  Message characters are
+ * converted one at a time by the compiled form of the Machine, or of a
+ * MachineTemplate's cursor, as they are read.
+ *
+ * @author Bradley Tian
+ */
+class CharMessageProcessor extends MessageProcessor {
+
+    /**
+     * A processor that applies setting lines from INPUT to MACHINE and
+     * writes the conversion of each message line of INPUT to OUTPUT.
+     */
+    CharMessageProcessor(Machine machine, Reader input, Writer output) {
+        super(machine);
+        _input = input;
+        _output = output;
+        _buffer = new char[BUFFER_SIZE];
+        _formatted = new char[BUFFER_SIZE + BUFFER_SIZE / GROUP_SIZE + 1];
+    }
+
+    /**
+     * A processor that converts each message line of INPUT with a cursor
+     * of TEMPLATE created by the last setting line, writing the results
+     * to OUTPUT.
+     */
+    CharMessageProcessor(MachineTemplate template, Reader input,
+                         Writer output) {
+        super(template);
+        _input = input;
+        _output = output;
+        _buffer = new char[BUFFER_SIZE];
+        _formatted = new char[BUFFER_SIZE + BUFFER_SIZE / GROUP_SIZE + 1];
+    }
+
+    /**
+     * Convert the rest of a message line in a single pass: each
+     * character is read, checked against the alphabet, mapped to its
+     * index, converted and written into _formatted with group
+     * separators, which is written out after every BUFFER_SIZE message
+     * characters, at the end of the line and before an error is
+     * reported.
+     */
+    @Override
+    void messageLine() throws IOException {
+        CompiledMachine engine = engine();
+        char[] formatted = _formatted;
+        int length = 0;
+        int k = 0;
+        int column = 0;
+        try {
+            while (_pos < _limit || fill()) {
+                char ch = _buffer[_pos++];
+                if (ch == '\n') {
+                    break;
+                } else if (ch == '\r') {
+                    skipNewline();
+                    break;
+                } else if (ch == ' ') {
+                    continue;
+                }
+                int c = _alphabet.toInt(ch);
+                if (c == -1 && ch != '(' && ch != ')') {
+                    _output.write(formatted, 0, k);
+                    throw error("input elements "
+                            + "not contained within alphabet.");
+                }
+                formatted[k++] = _alphabet.toChar(convert(engine, c));
+                column += 1;
+                if (column == GROUP_SIZE) {
+                    formatted[k++] = ' ';
+                    column = 0;
+                }
+                length += 1;
+                if (length == BUFFER_SIZE) {
+                    _output.write(formatted, 0, k);
+                    length = k = 0;
+                }
+            }
+        } finally {
+            release(engine);
+        }
+        _output.write(formatted, 0, k);
+        _output.write(LINE_SEPARATOR);
+    }
+
+    @Override
+    int read() throws IOException {
+        if (_pos == _limit && !fill()) {
+            return -1;
+        }
+        return _buffer[_pos++];
+    }
+
+    @Override
+    int peek() throws IOException {
+        if (_pos == _limit && !fill()) {
+            return -1;
+        }
+        return _buffer[_pos];
+    }
+
+    /** Refill the input buffer, returning false at the end of input. */
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = _input.read(_buffer, 0, _buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        _pos = 0;
+        _limit = n;
+        return true;
+    }
+
+    @Override
+    void unread() {
+        _pos -= 1;
+    }
+
+    @Override
+    void writeLines(int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            _output.write(LINE_SEPARATOR);
+        }
+    }
+
+    @Override
+    void flush() throws IOException {
+        _output.flush();
+    }
+
+    /** Size of the input buffer and of the blocks of message characters
+     *  written at once. */
+    static final int BUFFER_SIZE = 1 << 13;
+
+    /** Source of settings and messages. */
+    private final Reader _input;
+
+    /** Destination of converted messages. */
+    private final Writer _output;
+
+    /** Input buffer, holding _buffer[_pos.._limit-1] still unread. */
+    private final char[] _buffer;
+
+    /** Index of the next unread character in _buffer. */
+    private int _pos;
+
+    /** Number of valid characters in _buffer. */
+    private int _limit;
+
+    /** Converted characters with group separators, awaiting output. */
+    private final char[] _formatted;
+}
@@ -0,0 +1,713 @@
+package enigma;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A ciphertext-only key search by hill-climbing.  First every rotor order
+ * and start position is tried without a plugboard, keeping those whose
+ * decryptions have the highest index of coincidence.  For each of these,
+ * the ring settings that affect stepping are climbed one rotor at a time,
+ * again by index of coincidence.  Then, from several starting
+ * plugboards, plugboard pairs are climbed, scored first by index of
+ * coincidence and then by the bigram and trigram log-likelihoods of a
+ * LanguageModel.  The plugboard climbs of each candidate share a
+ * PlugboardScorer, so that each change of plugboard re-decrypts only
+ * the keystrokes it affects, and climbing allocates nothing.  The
+ * restarts run in parallel on a fork-join pool.
+ *
+ * @author Bradley Tian
+ */
+class CiphertextSearch {
+
+    /**
+     * A search for the key of a machine configured like MACHINE under
+     * which CIPHERTEXT was encrypted, scored by MODEL, or by the index
+     * of coincidence alone if MODEL is null.  Only the alphabet, slots,
+     * pawls and available rotors of MACHINE are used.
+     */
+    CiphertextSearch(Machine machine, String ciphertext,
+                     LanguageModel model) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _numRotors = machine.numRotors();
+        _numPawls = machine.numPawls();
+        _rotors = new ArrayList<>(machine.rotors());
+        _model = model;
+        _cipher = new int[ciphertext.length()];
+        for (int i = 0; i < _cipher.length; i++) {
+            _cipher[i] = _alphabet.toInt(ciphertext.charAt(i));
+            if (_cipher[i] == -1) {
+                throw error("Ciphertext character not in alphabet.");
+            }
+        }
+        if (_cipher.length < 2) {
+            throw error("Ciphertext too short.");
+        }
+        _orders = KeySearch.rotorOrders(_rotors, _numRotors, _numPawls);
+    }
+
+    /** Limit the search to the rotor orders in ORDERS, each naming the
+     *  rotors of every slot from the reflector on. */
+    void setRotorOrders(Collection<String[]> orders) {
+        for (String[] order : orders) {
+            if (order.length != _numRotors) {
+                throw error("Invalid rotor inputs.");
+            }
+        }
+        _orders = new ArrayList<>(orders);
+    }
+
+    /** Use PARALLELISM threads for the search. */
+    void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw error("Parallelism must be positive.");
+        }
+        _parallelism = parallelism;
+    }
+
+    /** Climb the rings and plugboard of the best COUNT rotor orders and
+     *  start positions. */
+    void setCandidates(int count) {
+        if (count < 1) {
+            throw error("Candidate count must be positive.");
+        }
+        _candidates = count;
+    }
+
+    /** Climb the plugboard of each candidate from RESTARTS starting
+     *  plugboards: an empty one, then random ones. */
+    void setRestarts(int restarts) {
+        if (restarts < 1) {
+            throw error("Restart count must be positive.");
+        }
+        _restarts = restarts;
+    }
+
+    /** Allow at most PAIRS plugboard pairs. */
+    void setMaxPairs(int pairs) {
+        if (pairs < 0) {
+            throw error("Pair count must not be negative.");
+        }
+        _maxPairs = pairs;
+    }
+
+    /** Seed the random starting plugboards with SEED. */
+    void setSeed(long seed) {
+        _seed = seed;
+    }
+
+    /** Search for the key and return the best found. */
+    Result search() {
+        long units = (long) _orders.size() * _size;
+        if (units > Integer.MAX_VALUE) {
+            throw error("Search space too large.");
+        }
+        _evaluations.reset();
+        _unitsDone.set(0);
+        _restartsDone.set(0);
+        _unitsTotal = (int) units;
+        _restartsTotal = 0;
+        _starts = new ArrayList<>();
+        _best = null;
+        _bestScore = Double.NEGATIVE_INFINITY;
+
+        ForkJoinPool pool = new ForkJoinPool(_parallelism);
+        try {
+            run(pool, _unitsTotal, this::searchPositions);
+            List<Start> starts = _starts;
+            _restartsTotal = starts.size() * _restarts;
+            run(pool, starts.size(), k -> climbRings(starts.get(k)));
+            run(pool, _restartsTotal, k ->
+                    climbPlugboard(starts.get(k / _restarts), k));
+        } finally {
+            pool.shutdown();
+        }
+        return best();
+    }
+
+    /** Run TASK for each integer from 0 to COUNT - 1 on POOL. */
+    private void run(ForkJoinPool pool, int count, IntConsumer task) {
+        try {
+            pool.submit(() -> IntStream.range(0, count).parallel()
+                    .forEach(task)).get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("Ciphertext search interrupted.");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof EnigmaException) {
+                throw (EnigmaException) cause;
+            }
+            throw error("Ciphertext search failed: %s", cause);
+        }
+    }
+
+    /** Return the number of decryptions evaluated so far. */
+    long evaluations() {
+        return _evaluations.sum();
+    }
+
+    /** Return the fraction of the search completed so far. */
+    double progress() {
+        long total = (long) _unitsTotal + _restartsTotal;
+        if (total == 0) {
+            return 0;
+        }
+        return (double) (_unitsDone.get() + _restartsDone.get()) / total;
+    }
+
+    /** Return the number of plugboard climbs completed so far. */
+    int restartsDone() {
+        return _restartsDone.get();
+    }
+
+    /** Return the best score of a completed plugboard climb so far. */
+    double bestScore() {
+        return _bestScore;
+    }
+
+    /** Return the best key found so far, or null. */
+    synchronized Result best() {
+        return _best;
+    }
+
+    /**
+     * Try, without a plugboard or ring settings, every start position
+     * of rotor order number UNIT / size whose leftmost rotor is at
+     * position UNIT % size, and add the best to the candidates.
+     */
+    private void searchPositions(int unit) {
+        String[] order = _orders.get(unit / _size);
+        Worker worker = _workers.get();
+        CompiledMachine engine = worker.engine(order, new int[_numRotors]);
+        int[] positions = new int[_numRotors];
+        positions[1] = unit % _size;
+        int[] counts = worker.counts;
+        ArrayList<Start> best = new ArrayList<>();
+        long evaluated = 0;
+        do {
+            engine.setPositions(positions);
+            for (int c = 0; c < _size; c++) {
+                counts[c] = 0;
+            }
+            for (int i = 0; i < _cipher.length; i++) {
+                engine.skip(1);
+                counts[engine.scramble(_cipher[i])] += 1;
+            }
+            evaluated += 1;
+            double score = LanguageModel.indexOfCoincidence(counts, _size,
+                    _cipher.length);
+            if (best.size() < _candidates
+                    || score > best.get(best.size() - 1).score) {
+                insert(best, new Start(order, positions.clone(),
+                        new int[_numRotors], score));
+            }
+        } while (KeySearch.nextPositions(positions, _size));
+        _evaluations.add(evaluated);
+        synchronized (this) {
+            for (Start start : best) {
+                insert(_starts, start);
+            }
+        }
+        _unitsDone.incrementAndGet();
+    }
+
+    /** Insert START into STARTS, which is sorted by decreasing score,
+     *  keeping only the best _candidates. */
+    private void insert(List<Start> starts, Start start) {
+        int k = starts.size();
+        while (k > 0 && starts.get(k - 1).score < start.score) {
+            k -= 1;
+        }
+        if (k < _candidates) {
+            starts.add(k, start);
+            if (starts.size() > _candidates) {
+                starts.remove(starts.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Climb the ring setting of each moving rotor of START that has a
+     * moving rotor to its left, from right to left, keeping its rotor
+     * cores at the first keystroke unchanged and choosing the ring that
+     * maximizes the index of coincidence without a plugboard.  Each
+     * ring is tried by moving the notches of an engine compiled once
+     * per rotor order.
+     */
+    private void climbRings(Start start) {
+        Worker worker = _workers.get();
+        int[] identity = worker.identity;
+        CompiledMachine engine = worker.ringEngine(start.order);
+        for (int slot = _numRotors - 1;
+             slot > _numRotors - _numPawls; slot--) {
+            int bestRing = start.rings[slot];
+            double best = start.score;
+            for (int ring = 0; ring < _size; ring++) {
+                start.rings[slot] = ring;
+                engine.setRings(start.rings);
+                decrypt(engine, start.offsets, identity, worker.text);
+                double score = LanguageModel.indexOfCoincidence(worker.text,
+                        _cipher.length, _size, worker.counts);
+                if (score > best) {
+                    best = score;
+                    bestRing = ring;
+                }
+            }
+            start.rings[slot] = bestRing;
+            start.score = best;
+        }
+    }
+
+    /**
+     * Climb the plugboard of START from the starting plugboard of
+     * restart number RESTART, and record the result.
+     */
+    private void climbPlugboard(Start start, int restart) {
+        Worker worker = _workers.get();
+        PlugboardScorer scorer = worker.scorer(start);
+        int[] plugs = worker.plugs;
+        for (int c = 0; c < _size; c++) {
+            plugs[c] = c;
+        }
+        if (restart % _restarts != 0) {
+            Random random = new Random(_seed * RESTART_PRIME + restart);
+            int pairs = random.nextInt(_maxPairs + 1);
+            for (int k = 0; k < pairs; k++) {
+                int a = random.nextInt(_size);
+                int b = random.nextInt(_size);
+                if (plugs[a] == a && plugs[b] == b) {
+                    plugs[a] = b;
+                    plugs[b] = a;
+                }
+            }
+        }
+
+        double score = 0;
+        int stages = _model == null ? 1 : _model.hasTrigrams() ? 3 : 2;
+        for (int stage = 0; stage < stages; stage++) {
+            score = climbStage(scorer, stage, plugs);
+        }
+        report(start, plugs, scorer.text(), score);
+        _restartsDone.incrementAndGet();
+    }
+
+    /**
+     * Climb the plugboard PLUGS through SCORER, scoring by the
+     * PlugboardScorer measure STAGE, until no single change improves the
+     * score.  Return the final score.
+     */
+    private double climbStage(PlugboardScorer scorer, int stage,
+                              int[] plugs) {
+        scorer.setMeasure(stage);
+        scorer.propose(plugs);
+        scorer.commit();
+        double best = scorer.score();
+        long evaluated = 1;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 0; i < _size; i++) {
+                for (int j = i + 1; j < _size; j++) {
+                    int a = plugs[i];
+                    int b = plugs[j];
+                    if (a == j) {
+                        plugs[i] = i;
+                        plugs[j] = j;
+                    } else {
+                        plugs[a] = a;
+                        plugs[b] = b;
+                        plugs[i] = j;
+                        plugs[j] = i;
+                        if (pairs(plugs) > _maxPairs) {
+                            restore(plugs, i, j, a, b);
+                            continue;
+                        }
+                    }
+                    double score = scorer.propose(plugs);
+                    evaluated += 1;
+                    if (score > best) {
+                        scorer.commit();
+                        best = score;
+                        improved = true;
+                    } else {
+                        restore(plugs, i, j, a, b);
+                    }
+                }
+            }
+        }
+        _evaluations.add(evaluated);
+        return best;
+    }
+
+    /** Restore PLUGS after a change to the pairing of I and J, which
+     *  were previously paired with A and B respectively. */
+    private static void restore(int[] plugs, int i, int j, int a, int b) {
+        plugs[a] = i;
+        plugs[b] = j;
+        plugs[i] = a;
+        plugs[j] = b;
+    }
+
+    /** Return the number of pairs in PLUGS. */
+    private int pairs(int[] plugs) {
+        int pairs = 0;
+        for (int c = 0; c < _size; c++) {
+            if (plugs[c] > c) {
+                pairs += 1;
+            }
+        }
+        return pairs;
+    }
+
+    /** Decrypt my ciphertext into TEXT through ENGINE, starting with its
+     *  rotors at OFFSETS, with plugboard PLUGS. */
+    private void decrypt(CompiledMachine engine, int[] offsets, int[] plugs,
+                         int[] text) {
+        engine.setPositions(offsets);
+        for (int i = 0; i < _cipher.length; i++) {
+            engine.skip(1);
+            text[i] = plugs[engine.scramble(plugs[_cipher[i]])];
+        }
+    }
+
+    /** Record the key of START with plugboard PLUGS, giving plaintext
+     *  TEXT with final score SCORE, if it is the best so far. */
+    private synchronized void report(Start start, int[] plugs, int[] text,
+                                     double score) {
+        if (_best != null && score <= _best.score()) {
+            return;
+        }
+        StringBuilder setting = new StringBuilder();
+        StringBuilder rings = new StringBuilder();
+        for (int slot = 1; slot < _numRotors; slot++) {
+            setting.append(_alphabet.toChar(Math.floorMod(
+                    start.offsets[slot] + start.rings[slot], _size)));
+            rings.append(_alphabet.toChar(start.rings[slot]));
+        }
+        StringBuilder cycles = new StringBuilder();
+        for (int c = 0; c < _size; c++) {
+            if (plugs[c] > c) {
+                cycles.append(cycles.length() == 0 ? "(" : " (")
+                        .append(_alphabet.toChar(c))
+                        .append(_alphabet.toChar(plugs[c])).append(')');
+            }
+        }
+        char[] plaintext = new char[_cipher.length];
+        for (int i = 0; i < plaintext.length; i++) {
+            plaintext[i] = _alphabet.toChar(text[i]);
+        }
+        _best = new Result(new KeySearch.Candidate(start.order.clone(),
+                setting.toString(), rings.toString(), cycles.toString()),
+                new String(plaintext), score);
+        _bestScore = score;
+    }
+
+    /** The best key found by a search. */
+    static class Result {
+
+        /** A result with key KEY, decrypting to PLAINTEXT with final
+         *  score SCORE. */
+        Result(KeySearch.Candidate key, String plaintext, double score) {
+            _key = key;
+            _plaintext = plaintext;
+            _score = score;
+        }
+
+        /** Return my key. */
+        KeySearch.Candidate key() {
+            return _key;
+        }
+
+        /** Return the decryption of the ciphertext under my key. */
+        String plaintext() {
+            return _plaintext;
+        }
+
+        /** Return the score of my plaintext by the last measure used. */
+        double score() {
+            return _score;
+        }
+
+        /** Returns my key as an input setting line. */
+        @Override
+        public String toString() {
+            return _key.toString();
+        }
+
+        /** My key. */
+        private final KeySearch.Candidate _key;
+
+        /** My plaintext. */
+        private final String _plaintext;
+
+        /** My score. */
+        private final double _score;
+    }
+
+    /** A rotor order, rotor offsets and ring settings to be climbed. */
+    private static class Start {
+
+        /** A start with rotors ORDER, effective rotor offsets OFFSETS,
+         *  ring settings RINGS, and score SCORE without a plugboard. */
+        Start(String[] order, int[] offsets, int[] rings, double score) {
+            this.order = order;
+            this.offsets = offsets;
+            this.rings = rings;
+            this.score = score;
+        }
+
+        /** Names of the rotors, from the reflector on. */
+        final String[] order;
+
+        /** Position of each slot, less its ring setting. */
+        final int[] offsets;
+
+        /** Ring setting of each slot. */
+        final int[] rings;
+
+        /** Score without a plugboard. */
+        double score;
+    }
+
+    /** The state used by one search thread. */
+    private class Worker {
+
+        /** A worker with its own copies of the available rotors. */
+        Worker() {
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            for (Rotor rotor : _rotors) {
+                rotors.add(rotor.copy());
+            }
+            machine = new Machine(_alphabet, _numRotors, _numPawls, rotors);
+            ArrayList<Rotor> ringRotors = new ArrayList<>();
+            for (Rotor rotor : _rotors) {
+                ringRotors.add(rotor.copy());
+            }
+            ringMachine = new Machine(_alphabet, _numRotors, _numPawls,
+                    ringRotors);
+            ringMachine.setScheduleLimit(0);
+            text = new int[_cipher.length];
+            counts = new int[_size];
+            plugs = new int[_size];
+            identity = new int[_size];
+            for (int c = 0; c < _size; c++) {
+                identity[c] = c;
+            }
+        }
+
+        /** Return a compiled machine with rotors ORDER and ring settings
+         *  RINGS, and no plugboard. */
+        CompiledMachine engine(String[] order, int[] rings) {
+            machine.insertRotors(order);
+            StringBuilder ringText = new StringBuilder();
+            for (int slot = 1; slot < _numRotors; slot++) {
+                ringText.append(_alphabet.toChar(rings[slot]));
+            }
+            machine.setRings(ringText.toString());
+            return machine.compile();
+        }
+
+        /** Return an unscheduled compiled machine with rotors ORDER,
+         *  one of _orders, and no plugboard, whose rings may be changed
+         *  by setRings, reusing the last one made if it was for ORDER. */
+        CompiledMachine ringEngine(String[] order) {
+            if (ringOrder != order) {
+                ringMachine.insertRotors(order);
+                ringEngine = ringMachine.compile();
+                ringOrder = order;
+            }
+            return ringEngine;
+        }
+
+        /** Return a scorer of my ciphertext under the rotor order,
+         *  offsets and ring settings of START, reusing the last one made
+         *  if it was for START. */
+        PlugboardScorer scorer(Start start) {
+            if (scorerStart != start) {
+                CompiledMachine engine = engine(start.order, start.rings);
+                engine.setPositions(start.offsets);
+                scorer = new PlugboardScorer(engine, _cipher,
+                        _cipher.length, _model);
+                scorerStart = start;
+            }
+            return scorer;
+        }
+
+        /** A machine with this worker's rotors. */
+        final Machine machine;
+
+        /** A machine with another copy of this worker's rotors, which
+         *  compiles without a schedule, so that changing the rings of
+         *  its compiled form is cheap. */
+        final Machine ringMachine;
+
+        /** The last engine made by ringEngine, or null. */
+        CompiledMachine ringEngine;
+
+        /** The rotor order for which ringEngine was made. */
+        String[] ringOrder;
+
+        /** The last scorer made, or null. */
+        PlugboardScorer scorer;
+
+        /** The start for which scorer was made. */
+        Start scorerStart;
+
+        /** Decryption buffer. */
+        final int[] text;
+
+        /** Letter counts. */
+        final int[] counts;
+
+        /** The plugboard being climbed. */
+        final int[] plugs;
+
+        /** The empty plugboard. */
+        final int[] identity;
+    }
+
+    /**
+     * Search for the key of the machine configured by ARGS[0] under
+     * which the contents of the file ARGS[1] were encrypted, printing
+     * the best key as a setting line and its decryption on the standard
+     * output, and statistics on the standard error.  ARGS[2], if
+     * present, names a sample of the plaintext language; otherwise only
+     * the index of coincidence is used.  Characters of the ciphertext
+     * file outside the alphabet are ignored.
+     */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 3) {
+                throw error("Usage: java enigma.CiphertextSearch CONFIG "
+                        + "CIPHERTEXT [CORPUS]");
+            }
+            Machine machine = Main.readConfig(args[0]);
+            Alphabet alphabet = machine.alphabet();
+            StringBuilder cipher = new StringBuilder();
+            for (char ch : new String(Files.readAllBytes(Paths.get(args[1])))
+                     .toCharArray()) {
+                if (alphabet.contains(ch)) {
+                    cipher.append(ch);
+                }
+            }
+            LanguageModel model = null;
+            if (args.length == 3) {
+                try (Reader corpus = new FileReader(args[2])) {
+                    model = new LanguageModel(alphabet, corpus);
+                }
+            }
+            CiphertextSearch search = new CiphertextSearch(machine,
+                    cipher.toString(), model);
+            long start = System.nanoTime();
+            Result result = search.search();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(result);
+            System.out.println(result.plaintext());
+            System.err.printf("score %.4f, %d evaluations in %.3f s "
+                    + "(%.0f/s)%n", result.score(), search.evaluations(),
+                    seconds, search.evaluations() / seconds);
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Default number of rotor orders and start positions climbed. */
+    static final int DEFAULT_CANDIDATES = 10;
+
+    /** Default number of starting plugboards per candidate. */
+    static final int DEFAULT_RESTARTS = 8;
+
+    /** Default maximum number of plugboard pairs. */
+    static final int DEFAULT_MAX_PAIRS = 10;
+
+    /** Multiplier combining the seed with the restart number. */
+    private static final long RESTART_PRIME = 1_000_003;
+
+    /** The alphabet of the machines searched. */
+    private final Alphabet _alphabet;
+
+    /** The size of _alphabet. */
+    private final int _size;
+
+    /** The number of rotor slots of the machines searched. */
+    private final int _numRotors;
+
+    /** The number of pawls of the machines searched. */
+    private final int _numPawls;
+
+    /** The rotors available. */
+    private final List<Rotor> _rotors;
+
+    /** The scoring model, or null. */
+    private final LanguageModel _model;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** The rotor orders searched. */
+    private List<String[]> _orders;
+
+    /** Number of threads searching. */
+    private int _parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** Number of rotor orders and start positions climbed. */
+    private int _candidates = DEFAULT_CANDIDATES;
+
+    /** Number of starting plugboards per candidate. */
+    private int _restarts = DEFAULT_RESTARTS;
+
+    /** Maximum number of plugboard pairs. */
+    private int _maxPairs = DEFAULT_MAX_PAIRS;
+
+    /** Seed of the random starting plugboards. */
+    private long _seed;
+
+    /** The best rotor orders and start positions found, best first. */
+    private List<Start> _starts;
+
+    /** The state of each searching thread. */
+    private final ThreadLocal<Worker> _workers =
+            ThreadLocal.withInitial(Worker::new);
+
+    /** Number of decryptions evaluated. */
+    private final LongAdder _evaluations = new LongAdder();
+
+    /** Number of rotor order and leftmost position units searched. */
+    private final AtomicInteger _unitsDone = new AtomicInteger();
+
+    /** Number of plugboard climbs completed. */
+    private final AtomicInteger _restartsDone = new AtomicInteger();
+
+    /** Total number of rotor order and leftmost position units. */
+    private volatile int _unitsTotal;
+
+    /** Total number of plugboard climbs. */
+    private volatile int _restartsTotal;
+
+    /** The best key found. */
+    private Result _best;
+
+    /** The score of _best. */
+    private volatile double _bestScore;
+}
@@ -0,0 +1,190 @@
+package enigma;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the CiphertextSearch,
+ *  PlugboardScorer and LanguageModel classes.
+ *  @author Bradley Tian
+ */
+public class CiphertextSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(120);
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    private static final String TEXT =
+        "By the shores of Gitche Gumee, By the shining Big-Sea-Water, "
+        + "Stood the wigwam of Nokomis, Daughter of the Moon, Nokomis. "
+        + "Dark behind it rose the forest, Rose the black and gloomy "
+        + "pine-trees, Rose the firs with cones upon them; Bright before "
+        + "it beat the water, Beat the clear and sunny water, Beat the "
+        + "shining Big-Sea-Water. There the wrinkled old Nokomis Nursed "
+        + "the little Hiawatha, Rocked him in his linden cradle, Bedded "
+        + "soft in moss and rushes, Safely bound with reindeer sinews; "
+        + "Stilled his fretful wail by saying, Hush! the Naked Bear will "
+        + "hear thee! Lulled him into slumber, singing, Ewa-yea! my little "
+        + "owlet! Who is this, that lights the wigwam? With his great eyes "
+        + "lights the wigwam? Ewa-yea! my little owlet! Many things "
+        + "Nokomis taught him Of the stars that shine in heaven; Showed "
+        + "him Ishkoodah, the comet, Ishkoodah, with fiery tresses; Showed "
+        + "the Death-Dance of the spirits, Warriors with their plumes and "
+        + "war-clubs, Flaring far away to northward In the frosty nights "
+        + "of Winter; Showed the broad white road in heaven, Pathway of "
+        + "the ghosts, the shadows, Running straight across the heavens, "
+        + "Crowded with the ghosts, the shadows.";
+
+    /** Return TEXT as upper-case letters only. */
+    private static String letters() {
+        StringBuilder result = new StringBuilder();
+        for (char ch : TEXT.toCharArray()) {
+            if (Character.isLetter(ch)) {
+                result.append(Character.toUpperCase(ch));
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return a machine with 4 slots and 3 pawls whose available rotors
+     *  are reflector B and moving rotors I, II and III. */
+    private Machine machine() {
+        return TestUtils.machine(4, 3, "B", "I", "II", "III");
+    }
+
+    @Test
+    public void testLanguageModel() {
+        LanguageModel model = new LanguageModel(AZ, new StringReader(TEXT));
+        assertTrue(model.hasTrigrams());
+        int[] english = new int[] { 19, 7, 4 };
+        int[] noise = new int[] { 16, 23, 9 };
+        assertTrue(model.bigramScore(english, 3)
+                > model.bigramScore(noise, 3));
+        assertTrue(model.trigramScore(english, 3)
+                > model.trigramScore(noise, 3));
+        int[] counts = new int[26];
+        assertEquals(1.0 / 3, LanguageModel.indexOfCoincidence(
+                new int[] { 0, 0, 1 }, 3, 26, counts), 1e-9);
+    }
+
+    @Test
+    public void testSearch() {
+        String plain = letters();
+        Machine mach = machine();
+        mach.insertRotors(new String[] { "B", "II", "I", "III" });
+        mach.setRotors("KQH");
+        mach.setPlugboard(new Permutation("(AT) (OZ) (EM)", AZ));
+        String cipher = mach.convert(plain);
+
+        CiphertextSearch search = new CiphertextSearch(machine(), cipher,
+                new LanguageModel(AZ, new StringReader(TEXT)));
+        search.setRotorOrders(Collections.singletonList(
+                new String[] { "B", "II", "I", "III" }));
+        search.setCandidates(3);
+        search.setRestarts(2);
+        CiphertextSearch.Result result = search.search();
+        assertEquals(plain, result.plaintext());
+        assertEquals(result.score(), search.bestScore(), 0);
+        assertEquals(6, search.restartsDone());
+        assertEquals(1.0, search.progress(), 1e-9);
+        assertTrue(search.evaluations() > 26 * 26 * 26);
+        try {
+            search.setMaxPairs(-1);
+            fail("Negative pair count accepted.");
+        } catch (EnigmaException excp) {
+            assertEquals("Pair count must not be negative.",
+                    excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testPlugboardScorer() {
+        LanguageModel model = new LanguageModel(AZ, new StringReader(TEXT));
+        Machine mach = machine();
+        mach.insertRotors(new String[] { "B", "III", "I", "II" });
+        mach.setRotors("ZEQ");
+        int[] cipher = new int[letters().length()];
+        for (int i = 0; i < cipher.length; i++) {
+            cipher[i] = mach.convert(AZ.toInt(letters().charAt(i)));
+        }
+        mach.setRotors("ZEQ");
+        PlugboardScorer scorer = new PlugboardScorer(mach.compile().copy(),
+                cipher, cipher.length, model);
+        assertEquals(0, scorer.rescored());
+
+        Random random = new Random(61);
+        int[] plugs = new int[26];
+        int[] committed = new int[26];
+        int[] text = new int[cipher.length];
+        int[] counts = new int[26];
+        for (int c = 0; c < 26; c++) {
+            committed[c] = c;
+        }
+        for (int trial = 0; trial < 300; trial++) {
+            int measure = trial / 100;
+            if (trial % 100 == 0) {
+                scorer.setMeasure(measure);
+            }
+            for (int c = 0; c < 26; c++) {
+                plugs[c] = c;
+            }
+            for (int k = random.nextInt(6); k > 0; k--) {
+                int a = random.nextInt(26);
+                int b = random.nextInt(26);
+                if (plugs[a] == a && plugs[b] == b) {
+                    plugs[a] = b;
+                    plugs[b] = a;
+                }
+            }
+            double score = scorer.propose(plugs);
+            decrypt(mach, plugs, cipher, text);
+            if (measure == PlugboardScorer.INDEX_OF_COINCIDENCE) {
+                assertEquals(LanguageModel.indexOfCoincidence(text,
+                        text.length, 26, counts), score, 1e-12);
+            } else if (measure == PlugboardScorer.BIGRAMS) {
+                assertEquals(model.bigramScore(text, text.length),
+                        score, 1e-6);
+            } else {
+                assertEquals(model.trigramScore(text, text.length),
+                        score, 1e-6);
+            }
+            if (random.nextBoolean()) {
+                scorer.commit();
+                System.arraycopy(plugs, 0, committed, 0, 26);
+                assertEquals(score, scorer.score(), 0);
+            }
+            decrypt(mach, committed, cipher, text);
+            assertArrayEquals(text, scorer.text());
+        }
+        assertTrue(scorer.rescored() < 300L * cipher.length);
+    }
+
+    /** Decrypt CIPHER into TEXT with MACH at setting ZEQ and
+     *  plugboard PLUGS. */
+    private static void decrypt(Machine mach, int[] plugs, int[] cipher,
+                                int[] text) {
+        mach.setRotors("ZEQ");
+        mach.setPlugboard(new Permutation(cycles(plugs), AZ));
+        for (int i = 0; i < cipher.length; i++) {
+            text[i] = mach.convert(cipher[i]);
+        }
+    }
+
+    /** Return the cycles of the involution PLUGS over AZ. */
+    private static String cycles(int[] plugs) {
+        StringBuilder result = new StringBuilder();
+        for (int c = 0; c < plugs.length; c++) {
+            if (plugs[c] > c) {
+                result.append('(').append(AZ.toChar(c))
+                    .append(AZ.toChar(plugs[c])).append(')');
+            }
+        }
+        return result.toString();
+    }
+}
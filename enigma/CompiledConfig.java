@@ -0,0 +1,319 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A binary form of a configuration file: the alphabet, the numbers of
+ * slots and pawls, and for each rotor its name, type, notches and
+ * wiring as an array of indices.  It is read with a single file read
+ * and decoded without any parsing, and Main accepts it in place of a
+ * configuration file.
+ *
+ * When asked to, Main also keeps the compiled form of each text
+ * configuration it reads in a cache directory, named by a hash of the
+ * text, so that reading the same configuration again skips parsing.
+ * Each entry holds the text it was compiled from and is used only if
+ * that matches exactly, so a hash collision costs only a parse.  The
+ * directory is given by the system property enigma.configCache; the
+ * cache is used only if it is set and not empty, so that runs write
+ * nothing outside the files they are given unless asked to.  Failures
+ * to read or write the cache are ignored.
+ *
+ * @author Bradley Tian
+ */
+class CompiledConfig {
+
+    /** Return true iff BYTES, the contents of a configuration file, are
+     *  a compiled configuration. */
+    static boolean compiled(byte[] bytes) {
+        return bytes.length >= Integer.BYTES
+                && ByteBuffer.wrap(bytes).getInt() == MAGIC;
+    }
+
+    /** Return the compiled form of the configuration of MACHINE. */
+    static byte[] encode(Machine machine) {
+        Alphabet alphabet = machine.alphabet();
+        int size = alphabet.size();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor rotor : machine.rotors()) {
+            Rotor initial = rotor.copy();
+            initial.reset();
+            rotors.add(initial);
+        }
+        int length = 6 * Integer.BYTES + 2 * size;
+        for (Rotor rotor : rotors) {
+            length += 1 + 2 * Integer.BYTES + 2 * rotor.name().length()
+                    + (rotor.notches().length() + size) * width(size);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        putString(buffer, alphabetString(alphabet));
+        buffer.putInt(machine.numRotors()).putInt(machine.numPawls());
+        buffer.putInt(rotors.size());
+        for (Rotor rotor : rotors) {
+            putString(buffer, rotor.name());
+            buffer.put(rotor.reflecting() ? REFLECTOR
+                    : rotor.rotates() ? MOVING : FIXED);
+            String notches = rotor.notches();
+            buffer.putInt(notches.length());
+            for (int i = 0; i < notches.length(); i++) {
+                putIndex(buffer, alphabet.toInt(notches.charAt(i)), size);
+            }
+            Permutation perm = rotor.permutation();
+            for (int i = 0; i < size; i++) {
+                putIndex(buffer, perm.permute(i), size);
+            }
+        }
+        return buffer.array();
+    }
+
+    /** Return a machine with the configuration compiled in BYTES. */
+    static Machine decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /** Return a machine with the configuration compiled in the remaining
+     *  bytes of BUFFER. */
+    private static Machine decode(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw error("Invalid compiled configuration.");
+            }
+            Alphabet alphabet = new Alphabet(getString(buffer));
+            int size = alphabet.size();
+            int numRotors = buffer.getInt();
+            int numPawls = buffer.getInt();
+            int count = buffer.getInt();
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            int[] wiring = new int[size];
+            for (int k = 0; k < count; k++) {
+                String name = getString(buffer);
+                byte type = buffer.get();
+                char[] notches = new char[getLength(buffer,
+                        size <= BYTE_INDICES ? 1 : Character.BYTES)];
+                for (int i = 0; i < notches.length; i++) {
+                    notches[i] = alphabet.toChar(getIndex(buffer, size));
+                }
+                for (int i = 0; i < size; i++) {
+                    wiring[i] = getIndex(buffer, size);
+                }
+                Permutation perm = new Permutation(wiring, alphabet);
+                if (type == REFLECTOR) {
+                    rotors.add(new Reflector(name, perm));
+                } else if (type == FIXED) {
+                    rotors.add(new FixedRotor(name, perm));
+                } else if (type == MOVING) {
+                    rotors.add(new MovingRotor(name, perm,
+                            new String(notches)));
+                } else {
+                    throw error("Invalid compiled configuration.");
+                }
+            }
+            if (buffer.hasRemaining()) {
+                throw error("Invalid compiled configuration.");
+            }
+            return new Machine(alphabet, numRotors, numPawls, rotors);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | NegativeArraySizeException | EnigmaException excp) {
+            throw error("Invalid compiled configuration.");
+        }
+    }
+
+    /** Return the machine compiled from TEXT, the contents of a text
+     *  configuration file, that is held in the cache, or null if there
+     *  is none. */
+    static Machine cached(byte[] text) {
+        Path file = cacheFile(text);
+        if (file == null || !Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            ByteBuffer entry = ByteBuffer.wrap(Files.readAllBytes(file));
+            int length = entry.getInt();
+            if (length != text.length || entry.remaining() < length
+                    || !Arrays.equals(entry.array(), entry.position(),
+                            entry.position() + length, text, 0, length)) {
+                return null;
+            }
+            entry.position(entry.position() + length);
+            return decode(entry.slice());
+        } catch (IOException | BufferUnderflowException
+                 | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Record MACHINE, freshly configured from TEXT, the contents of a
+     *  text configuration file, in the cache. */
+    static void cache(byte[] text, Machine machine) {
+        Path file = cacheFile(text);
+        if (file == null) {
+            return;
+        }
+        byte[] image = encode(machine);
+        ByteBuffer entry = ByteBuffer.allocate(
+                Integer.BYTES + text.length + image.length);
+        entry.putInt(text.length).put(text).put(image);
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), "config",
+                    ".tmp");
+            try {
+                Files.write(temp, entry.array());
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException | UnsupportedOperationException excp) {
+            return;
+        }
+    }
+
+    /** Return the cache file for the text configuration TEXT, or null if
+     *  the cache is disabled: if CACHE_PROPERTY is unset or empty. */
+    static Path cacheFile(byte[] text) {
+        String dir = System.getProperty(CACHE_PROPERTY);
+        if (dir == null || dir.isEmpty()) {
+            return null;
+        }
+        long hash = FNV_BASIS;
+        byte[] salt = (VERSION + Charset.defaultCharset().name())
+                .getBytes(StandardCharsets.UTF_8);
+        for (byte b : salt) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        for (byte b : text) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        String name = Long.toHexString(hash);
+        return Paths.get(dir, "0".repeat(HASH_DIGITS - name.length()) + name
+                + ".cfg");
+    }
+
+    /** Return the characters of ALPHABET, in order. */
+    private static String alphabetString(Alphabet alphabet) {
+        char[] chars = new char[alphabet.size()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = alphabet.toChar(i);
+        }
+        return new String(chars);
+    }
+
+    /** Return the number of bytes holding an index of an alphabet of
+     *  SIZE characters. */
+    private static int width(int size) {
+        return size <= BYTE_INDICES ? 1 : 2;
+    }
+
+    /** Append INDEX, of an alphabet of SIZE characters, to BUFFER. */
+    private static void putIndex(ByteBuffer buffer, int index, int size) {
+        if (size <= BYTE_INDICES) {
+            buffer.put((byte) index);
+        } else {
+            buffer.putChar((char) index);
+        }
+    }
+
+    /** Return the next index, of an alphabet of SIZE characters, in
+     *  BUFFER. */
+    private static int getIndex(ByteBuffer buffer, int size) {
+        if (size <= BYTE_INDICES) {
+            return buffer.get() & 0xff;
+        } else {
+            return buffer.getChar();
+        }
+    }
+
+    /** Return the next length in BUFFER, that of a sequence of items of
+     *  WIDTH bytes each, which must fit in the rest of BUFFER, so that
+     *  a corrupt length is reported before anything is allocated. */
+    private static int getLength(ByteBuffer buffer, int width) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining() / width) {
+            throw error("Invalid compiled configuration.");
+        }
+        return length;
+    }
+
+    /** Append the length and characters of S to BUFFER. */
+    private static void putString(ByteBuffer buffer, String s) {
+        buffer.putInt(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buffer.putChar(s.charAt(i));
+        }
+    }
+
+    /** Return the next string, as written by putString, in BUFFER. */
+    private static String getString(ByteBuffer buffer) {
+        char[] chars = new char[getLength(buffer, Character.BYTES)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = buffer.getChar();
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Compile the configuration file named ARGS[0] into the file named
+     * ARGS[1].
+     */
+    public static void main(String... args) {
+        try {
+            if (args.length != 2) {
+                throw error("Usage: java enigma.CompiledConfig CONFIG "
+                        + "OUTPUT");
+            }
+            Files.write(Paths.get(args[1]),
+                    encode(Main.readConfig(args[0])));
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** System property naming the cache directory, and so enabling the
+     *  cache. */
+    static final String CACHE_PROPERTY = "enigma.configCache";
+
+    /** First four bytes of a compiled configuration: "ENGC". */
+    static final int MAGIC = 0x454e4743;
+
+    /** Version of the compiled format. */
+    static final int VERSION = 1;
+
+    /** Type of a reflector. */
+    private static final byte REFLECTOR = 'R';
+
+    /** Type of a fixed rotor. */
+    private static final byte FIXED = 'N';
+
+    /** Type of a moving rotor. */
+    private static final byte MOVING = 'M';
+
+    /** Largest alphabet whose indices are stored in single bytes. */
+    private static final int BYTE_INDICES = 256;
+
+    /** Number of hexadecimal digits in the name of a cache file. */
+    private static final int HASH_DIGITS = 16;
+
+    /** Initial value of the FNV-1a hash. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+
+    /** Multiplier of the FNV-1a hash. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+}
@@ -0,0 +1,152 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the CompiledConfig class.
+ *  @author Bradley Tian
+ */
+public class CompiledConfigTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** Return the conversion of a long message by MACHINE, set up by
+     *  the setting line SETTINGS. */
+    private static String convert(Machine machine, String settings) {
+        MessageProcessor.setUp(machine, settings);
+        return machine.convert("HELLOWORLD".repeat(2000));
+    }
+
+    /** Assert that machines A and B, configured alike, convert alike. */
+    private static void assertSameMachine(Machine a, Machine b) {
+        assertEquals(a.numRotors(), b.numRotors());
+        assertEquals(a.numPawls(), b.numPawls());
+        assertEquals(a.rotors().size(), b.rotors().size());
+        for (String settings : new String[] {
+                "* B Beta III IV I AXLE (YF) (ZH)",
+                "* B Beta VI II I QRZA BCDE (AB)",
+                "* B Beta I II III ZZZZ"}) {
+            assertEquals(convert(a, settings), convert(b, settings));
+        }
+    }
+
+    /** Delete DIR and everything in it. */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>)
+                    files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testEncodeDecode() throws IOException {
+        String saved = System.getProperty(CompiledConfig.CACHE_PROPERTY);
+        Path dir = Files.createTempDirectory("enigma-config");
+        System.setProperty(CompiledConfig.CACHE_PROPERTY, "");
+        try {
+            Path config = dir.resolve("default.conf");
+            Files.writeString(config, TestUtils.CONFIG);
+            Machine parsed = Main.readConfig(config.toString());
+            byte[] image = CompiledConfig.encode(parsed);
+            assertTrue(CompiledConfig.compiled(image));
+            assertFalse(CompiledConfig.compiled(
+                    TestUtils.CONFIG.getBytes(StandardCharsets.UTF_8)));
+            assertSameMachine(parsed, CompiledConfig.decode(image));
+
+            Path compiled = dir.resolve("default.bin");
+            Files.write(compiled, image);
+            assertSameMachine(parsed, Main.readConfig(compiled.toString()));
+
+            for (int length : new int[] { -1, Integer.MAX_VALUE,
+                                          image.length }) {
+                byte[] corrupt = image.clone();
+                ByteBuffer.wrap(corrupt).putInt(2 * Integer.BYTES, length);
+                assertInvalid(corrupt);
+            }
+            image[image.length - 1] ^= 1;
+            assertInvalid(image);
+        } finally {
+            restore(saved);
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testCache() throws IOException {
+        String saved = System.getProperty(CompiledConfig.CACHE_PROPERTY);
+        Path dir = Files.createTempDirectory("enigma-cache");
+        System.setProperty(CompiledConfig.CACHE_PROPERTY, dir.toString());
+        try {
+            byte[] text = TestUtils.CONFIG.getBytes();
+            Path config = dir.resolve("default.conf");
+            Files.write(config, text);
+            assertNull(CompiledConfig.cached(text));
+            Machine parsed = Main.readConfig(config.toString());
+            Path entry = CompiledConfig.cacheFile(text);
+            assertTrue(Files.isRegularFile(entry));
+            Machine cached = CompiledConfig.cached(text);
+            assertNotNull(cached);
+            assertSameMachine(parsed, cached);
+
+            byte[] other = TestUtils.CONFIG.replace("MZM", "MZ").getBytes();
+            Files.copy(entry, CompiledConfig.cacheFile(other));
+            assertNull(CompiledConfig.cached(other));
+
+            Files.write(entry, new byte[] {1, 2, 3});
+            assertNull(CompiledConfig.cached(text));
+            assertSameMachine(parsed, Main.readConfig(config.toString()));
+            assertNotNull(CompiledConfig.cached(text));
+
+            byte[] corrupt = Files.readAllBytes(entry);
+            ByteBuffer.wrap(corrupt).putInt(
+                    Integer.BYTES + text.length + 2 * Integer.BYTES,
+                    Integer.MAX_VALUE);
+            Files.write(entry, corrupt);
+            assertNull(CompiledConfig.cached(text));
+            assertSameMachine(parsed, Main.readConfig(config.toString()));
+
+            System.setProperty(CompiledConfig.CACHE_PROPERTY, "");
+            assertNull(CompiledConfig.cacheFile(text));
+            System.clearProperty(CompiledConfig.CACHE_PROPERTY);
+            assertNull(CompiledConfig.cacheFile(text));
+        } finally {
+            restore(saved);
+            delete(dir);
+        }
+    }
+
+    /** Assert that IMAGE is rejected as an invalid compiled
+     *  configuration. */
+    private static void assertInvalid(byte[] image) {
+        try {
+            CompiledConfig.decode(image);
+            fail("Corrupt configuration not detected.");
+        } catch (EnigmaException excp) {
+            assertEquals("Invalid compiled configuration.",
+                    excp.getMessage());
+        }
+    }
+
+    /** Restore the cache directory property to SAVED, or clear it if
+     *  SAVED is null. */
+    private static void restore(String saved) {
+        if (saved == null) {
+            System.clearProperty(CompiledConfig.CACHE_PROPERTY);
+        } else {
+            System.setProperty(CompiledConfig.CACHE_PROPERTY, saved);
+        }
+    }
+}
@@ -0,0 +1,657 @@
+package enigma;
+
+import java.util.Arrays;
+
+/**
+ * A snapshot of the rotors, ring settings and plugboard of a Machine,
+ * flattened into primitive tables so that a keystroke is a handful of
+ * array reads.  The wiring of each rotor is stored pre-shifted for every
+ * rotor offset, so the signal path needs no modular arithmetic.  When
+ * the moving rotors have few enough combined positions, the successor of
+ * every combination is also precomputed, so stepping needs no notch
+ * tests.  Optionally, the rotor core permutation at each combination of
+ * positions reached is kept in a CoreCache, so that positions recurring
+ * across messages cost a single table read.  The result of each
+ * conversion is identical to that of Machine.convert.
+ *
+ * @author Bradley Tian
+ */
+class CompiledMachine {
+
+    /**
+     * A compiled copy of the rotors currently inserted into MACHINE,
+     * including their ring settings and positions, and of MACHINE's
+     * plugboard.
+     */
+    CompiledMachine(Machine machine) {
+        _size = machine.alphabet().size();
+        int numSlots = machine.numRotors();
+        _rotors = new Rotor[numSlots];
+        _wirings = new Permutation[numSlots];
+        _notchSources = new String[numSlots];
+        _rotates = new boolean[numSlots];
+        _notches = new boolean[numSlots * _size];
+        _positions = new int[numSlots];
+        _rows = new int[numSlots];
+        _shifted = _size <= MAX_SHIFTED_SIZE;
+
+        int stride = _shifted ? _size * _size : 2 * _size;
+        _forward = new int[numSlots * stride];
+        _backward = new int[numSlots * stride];
+        for (int i = 0; i < numSlots; i++) {
+            Rotor rotor = machine.getRotor(i);
+            Permutation perm = rotor.permutation();
+            _rotors[i] = rotor;
+            _wirings[i] = perm;
+            _notchSources[i] = rotor.notches();
+            _rotates[i] = rotor.rotates();
+            if (!(rotor instanceof FixedRotor)) {
+                String notches = rotor.notches();
+                for (int k = 0; k < notches.length(); k++) {
+                    int notch = machine.alphabet().toInt(notches.charAt(k));
+                    _notches[i * _size + notch] = true;
+                }
+            }
+            int base = i * stride;
+            if (_shifted) {
+                for (int pos = 0; pos < _size; pos++) {
+                    for (int c = 0; c < _size; c++) {
+                        _forward[base + pos * _size + c] = perm.wrap(
+                                perm.permute(c + pos) - pos);
+                        _backward[base + pos * _size + c] = perm.wrap(
+                                perm.invert(c + pos) - pos);
+                    }
+                }
+            } else {
+                for (int c = 0; c < 2 * _size; c++) {
+                    _forward[base + c] = perm.permute(c);
+                    _backward[base + c] = perm.invert(c);
+                }
+            }
+        }
+
+        _plugboardSource = machine.plugboard();
+        _plugboard = new int[_size];
+        for (int c = 0; c < _size; c++) {
+            _plugboard[c] = _plugboardSource.permute(c);
+        }
+
+        int moving = 0;
+        for (boolean rotates : _rotates) {
+            if (rotates) {
+                moving += 1;
+            }
+        }
+        _moving = new int[moving];
+        for (int i = 0, j = 0; i < numSlots; i++) {
+            if (_rotates[i]) {
+                _moving[j++] = i;
+            }
+        }
+        long states = 1;
+        for (int j = 0; j < moving && states <= Integer.MAX_VALUE; j++) {
+            states *= _size;
+        }
+        if (_shifted && moving > 0
+                && states * (moving + 1) <= machine.scheduleLimit()) {
+            _successors = new int[(int) states];
+            _schedule = new int[(int) states * moving];
+            buildSchedule();
+        } else {
+            _successors = null;
+            _schedule = null;
+        }
+        _cacheCapacity = packable(numSlots) ? machine.coreCacheSize() : 0;
+        _cores = _cacheCapacity == 0 ? null
+                : new CoreCache(_size, _cacheCapacity);
+        load(machine);
+    }
+
+    /**
+     * A copy of MACHINE sharing its tables, whose positions may be
+     * changed independently of MACHINE's.
+     */
+    private CompiledMachine(CompiledMachine machine) {
+        _size = machine._size;
+        _shifted = machine._shifted;
+        _rotors = machine._rotors;
+        _wirings = machine._wirings;
+        _notchSources = machine._notchSources;
+        _plugboardSource = machine._plugboardSource;
+        _rotates = machine._rotates;
+        _notches = machine._notches;
+        _forward = machine._forward;
+        _backward = machine._backward;
+        _plugboard = machine._plugboard;
+        _moving = machine._moving;
+        _successors = machine._successors;
+        _schedule = machine._schedule;
+        _positions = machine._positions.clone();
+        _rows = machine._rows.clone();
+        _state = machine._state;
+        _cacheCapacity = machine._cacheCapacity;
+        _cores = _cacheCapacity == 0 ? null
+                : new CoreCache(_size, _cacheCapacity);
+    }
+
+    /**
+     * Return a copy of me with the same tables and current positions,
+     * and an empty core cache of its own, which may be used
+     * concurrently with me.
+     */
+    CompiledMachine copy() {
+        return new CompiledMachine(this);
+    }
+
+    /**
+     * Return true iff I was compiled from the rotors, wirings, notches
+     * and plugboard currently in use by MACHINE, so that only positions
+     * need to be reloaded.
+     */
+    boolean matches(Machine machine) {
+        if (machine.numRotors() != _rotors.length
+                || machine.plugboard() != _plugboardSource) {
+            return false;
+        }
+        for (int i = 0; i < _rotors.length; i++) {
+            Rotor rotor = machine.getRotor(i);
+            if (rotor != _rotors[i] || rotor.permutation() != _wirings[i]
+                    || !rotor.notches().equals(_notchSources[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Set my rotor positions to the current settings of the rotors of
+     * MACHINE.
+     */
+    void load(Machine machine) {
+        for (int i = 0; i < _positions.length; i++) {
+            setPosition(i, machine.getRotor(i).setting());
+        }
+        _state = state();
+    }
+
+    /** Return true iff my rotors are stepped through a precomputed
+     *  schedule rather than by evaluating notches at each keystroke. */
+    boolean scheduled() {
+        return _successors != null;
+    }
+
+    /**
+     * Set the settings of the moving rotors of MACHINE to my rotor
+     * positions.
+     */
+    void store(Machine machine) {
+        syncPositions();
+        for (int i = 0; i < _positions.length; i++) {
+            if (_rotates[i]) {
+                machine.getRotor(i).set(_positions[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the result of converting the input character C (as an
+     * index in the range 0..alphabet size - 1), after first advancing
+     * the rotors, exactly as Machine.convert does.
+     */
+    int convert(int c) {
+        advance();
+        if (c < 0 || c >= _size) {
+            c = _plugboardSource.wrap(c);
+        }
+        return _plugboard[scramble(_plugboard[c])];
+    }
+
+    /**
+     * Return the result of passing C (an index in the range 0..alphabet
+     * size - 1) through my rotors and reflector at their current
+     * positions, without the plugboard and without advancing them.
+     */
+    int scramble(int c) {
+        if (_cores == null) {
+            return walk(c);
+        }
+        long key = key();
+        int base = _cores.find(key);
+        int[] tables = _cores.tables();
+        if (base < 0) {
+            base = _cores.claim(key);
+            for (int x = 0; x < _size; x++) {
+                tables[base + x] = walk(x);
+            }
+        }
+        return tables[base + c];
+    }
+
+    /** Return my core cache, or null if I have none. */
+    CoreCache cores() {
+        return _cores;
+    }
+
+    /** Return the result of passing C through my rotors and reflector
+     *  at their current positions, without consulting my cache. */
+    private int walk(int c) {
+        int last = _positions.length - 1;
+        if (_shifted) {
+            for (int i = last; i >= 0; i--) {
+                c = _forward[_rows[i] + c];
+            }
+            for (int i = 1; i <= last; i++) {
+                c = _backward[_rows[i] + c];
+            }
+        } else {
+            for (int i = last; i >= 0; i--) {
+                c = _forward[_rows[i] + c] - _positions[i];
+                if (c < 0) {
+                    c += _size;
+                }
+            }
+            for (int i = 1; i <= last; i++) {
+                c = _backward[_rows[i] + c] - _positions[i];
+                if (c < 0) {
+                    c += _size;
+                }
+            }
+        }
+        return c;
+    }
+
+    /** Return the size of my alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return my number of rotor slots. */
+    int numSlots() {
+        return _positions.length;
+    }
+
+    /** Return my forward wiring tables, indexed by the start of a row
+     *  recorded by saveState plus an input index. */
+    int[] forwardTable() {
+        return _forward;
+    }
+
+    /** Return my inverse wiring tables, indexed as forwardTable(). */
+    int[] backwardTable() {
+        return _backward;
+    }
+
+    /** Return my plugboard mapping. */
+    int[] plugboardTable() {
+        return _plugboard;
+    }
+
+    /** Return the slots of my moving rotors, from left to right. */
+    int[] movingSlots() {
+        return _moving;
+    }
+
+    /** Return the successor of each state of my moving rotors, or null
+     *  if I am not scheduled. */
+    int[] successorTable() {
+        return _successors;
+    }
+
+    /** Return the row of each moving rotor in each state, indexed by
+     *  state * movingSlots().length + j, or null if I am not
+     *  scheduled. */
+    int[] scheduleTable() {
+        return _schedule;
+    }
+
+    /** Return the current state of my moving rotors, if I am
+     *  scheduled. */
+    int scheduleState() {
+        return _state;
+    }
+
+    /** Return the number of elements written by saveState. */
+    int stateSize() {
+        return 2 * _positions.length;
+    }
+
+    /**
+     * Write a record of the current positions of my rotors into STATE,
+     * starting at OFFSET, for use by scramble(STATE, OFFSET, C).
+     */
+    void saveState(int[] state, int offset) {
+        int slots = _positions.length;
+        System.arraycopy(_rows, 0, state, offset, slots);
+        System.arraycopy(_positions, 0, state, offset + slots, slots);
+    }
+
+    /**
+     * Return the result of passing C through my rotors and reflector at
+     * the positions recorded by saveState in STATE at OFFSET, without
+     * the plugboard.
+     */
+    int scramble(int[] state, int offset, int c) {
+        int last = _positions.length - 1;
+        if (_shifted) {
+            for (int i = last; i >= 0; i--) {
+                c = _forward[state[offset + i] + c];
+            }
+            for (int i = 1; i <= last; i++) {
+                c = _backward[state[offset + i] + c];
+            }
+        } else {
+            int posns = offset + last + 1;
+            for (int i = last; i >= 0; i--) {
+                c = _forward[state[offset + i] + c] - state[posns + i];
+                if (c < 0) {
+                    c += _size;
+                }
+            }
+            for (int i = 1; i <= last; i++) {
+                c = _backward[state[offset + i] + c] - state[posns + i];
+                if (c < 0) {
+                    c += _size;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Move my notches to where the ring settings RINGS, indexed by slot,
+     * put the notches of my rotors, leaving my rotor positions as they
+     * are, so that a search may try many ring settings with the same
+     * rotor offsets without recompiling.  A scheduled machine rebuilds
+     * its schedule, in time proportional to its size; an unscheduled one
+     * allocates nothing and does no more.  My copies share my notches
+     * and schedule, and I no longer match any Machine.
+     */
+    void setRings(int[] rings) {
+        for (int i = 0; i < _rotors.length; i++) {
+            if (!(_rotors[i] instanceof FixedRotor)) {
+                Alphabet alphabet = _wirings[i].alphabet();
+                String notches = _rotors[i].baseNotches();
+                int base = i * _size;
+                Arrays.fill(_notches, base, base + _size, false);
+                for (int k = 0; k < notches.length(); k++) {
+                    int notch = alphabet.toInt(notches.charAt(k)) - rings[i];
+                    _notches[base + (notch < 0 ? notch + _size : notch)] =
+                            true;
+                }
+            }
+            _notchSources[i] = null;
+        }
+        if (_successors != null) {
+            syncPositions();
+            buildSchedule();
+            _state = state();
+        }
+    }
+
+    /**
+     * Set the position of the rotor in each slot to the corresponding
+     * element of POSITIONS, each in the range 0..alphabet size - 1.
+     */
+    void setPositions(int[] positions) {
+        for (int i = 0; i < _positions.length; i++) {
+            setPosition(i, positions[i]);
+        }
+        _state = state();
+    }
+
+    /**
+     * Advance my rotors as if N characters had been converted.
+     */
+    void skip(long n) {
+        for (long i = 0; i < n; i++) {
+            advance();
+        }
+    }
+
+    /**
+     * Advance my rotors as if N characters had been converted, in time
+     * bounded by the period of the stepping sequence rather than by N.
+     * The positions reached by successive keystrokes are eventually
+     * periodic; Brent's cycle detection finds the period while stepping,
+     * after which the remaining steps are reduced modulo the period.
+     */
+    void seek(long n) {
+        syncPositions();
+        int[] saved = _positions.clone();
+        long power = 1;
+        long period = 0;
+        for (long i = 0; i < n; i++) {
+            if (period == power) {
+                System.arraycopy(_positions, 0, saved, 0, saved.length);
+                power *= 2;
+                period = 0;
+            }
+            step();
+            period += 1;
+            if (Arrays.equals(saved, _positions)) {
+                _state = state();
+                skip((n - i - 1) % period);
+                return;
+            }
+        }
+        _state = state();
+    }
+
+    /**
+     * Advance all rotors to their next position, from my schedule if I
+     * have one.  A scheduled step updates only _rows and _state, leaving
+     * _positions to be brought up to date by syncPositions.
+     */
+    private void advance() {
+        if (_successors == null) {
+            step();
+            return;
+        }
+        int state = _successors[_state];
+        int base = state * _moving.length;
+        for (int j = 0; j < _moving.length; j++) {
+            _rows[_moving[j]] = _schedule[base + j];
+        }
+        _state = state;
+    }
+
+    /**
+     * Fill _successors and _schedule by stepping once from every
+     * combination of positions of the moving rotors, leaving my
+     * positions as they were.
+     */
+    private void buildSchedule() {
+        int[] saved = _positions.clone();
+        for (int state = 0; state < _successors.length; state++) {
+            _state = state;
+            syncPositions();
+            step();
+            int next = state();
+            _successors[state] = next;
+            for (int j = 0; j < _moving.length; j++) {
+                _schedule[next * _moving.length + j] =
+                        _rows[_moving[j]];
+            }
+        }
+        for (int i = 0; i < saved.length; i++) {
+            setPosition(i, saved[i]);
+        }
+    }
+
+    /** Set the positions and rows of my moving rotors from _state, if I
+     *  am scheduled. */
+    private void syncPositions() {
+        if (_successors != null) {
+            int digits = _state;
+            for (int j = _moving.length - 1; j >= 0; j--) {
+                setPosition(_moving[j], digits % _size);
+                digits /= _size;
+            }
+        }
+    }
+
+    /** Return true iff the positions of NUMSLOTS rotors can be packed
+     *  into a non-negative long. */
+    private boolean packable(int numSlots) {
+        long limit = Long.MAX_VALUE;
+        for (int i = 0; i < numSlots; i++) {
+            limit /= _size;
+        }
+        return limit > 0;
+    }
+
+    /** Return the current positions of all my rotors packed into a long
+     *  as the digits of a base-size number, with those of the moving
+     *  rotors taken from _state if I am scheduled. */
+    private long key() {
+        if (_successors == null) {
+            long key = 0;
+            for (int posn : _positions) {
+                key = key * _size + posn;
+            }
+            return key;
+        }
+        long key = _state;
+        for (int i = 0; i < _positions.length; i++) {
+            if (!_rotates[i]) {
+                key = key * _size + _positions[i];
+            }
+        }
+        return key;
+    }
+
+    /** Return the index in my schedule of the current positions of my
+     *  moving rotors, or 0 if I have no schedule. */
+    private int state() {
+        if (_successors == null) {
+            return 0;
+        }
+        int state = 0;
+        for (int slot : _moving) {
+            state = state * _size + _positions[slot];
+        }
+        return state;
+    }
+
+    /**
+     * Advance all rotors to their next position, following the same
+     * stepping and double-stepping rules as Machine.
+     */
+    private void step() {
+        int last = -1;
+        boolean hasLastAdvanced = false;
+        boolean isLastAtNotch = false;
+        int fast = _positions.length - 1;
+        if (_rotates[fast]) {
+            isLastAtNotch = atNotch(fast);
+            step(fast);
+            last = fast;
+            hasLastAdvanced = true;
+        }
+        for (int i = fast - 1; i >= 0; i--) {
+            if (isLastAtNotch && _rotates[i]) {
+                isLastAtNotch = atNotch(i);
+                step(i);
+                if (!hasLastAdvanced) {
+                    step(last);
+                    hasLastAdvanced = true;
+                }
+            } else {
+                isLastAtNotch = atNotch(i);
+                hasLastAdvanced = false;
+            }
+            last = i;
+        }
+    }
+
+    /** Return true iff the rotor in SLOT is at one of its notches. */
+    private boolean atNotch(int slot) {
+        return _notches[slot * _size + _positions[slot]];
+    }
+
+    /** Advance the rotor in SLOT one position, if it rotates. */
+    private void step(int slot) {
+        if (_rotates[slot]) {
+            int pos = _positions[slot] + 1;
+            setPosition(slot, pos == _size ? 0 : pos);
+        }
+    }
+
+    /** Set the position of the rotor in SLOT to POSN. */
+    private void setPosition(int slot, int posn) {
+        _positions[slot] = posn;
+        if (_shifted) {
+            _rows[slot] = slot * _size * _size + posn * _size;
+        } else {
+            _rows[slot] = slot * 2 * _size + posn;
+        }
+    }
+
+    /** Alphabets up to this size are compiled into tables pre-shifted
+     *  for every rotor offset; larger ones use a single doubled table
+     *  per rotor and subtract the offset on the way out. */
+    static final int MAX_SHIFTED_SIZE = 256;
+
+    /** The size of my alphabet. */
+    private final int _size;
+
+    /** True iff _forward and _backward are pre-shifted tables. */
+    private final boolean _shifted;
+
+    /** The rotors I was compiled from, by slot. */
+    private final Rotor[] _rotors;
+
+    /** The permutations of _rotors when I was compiled. */
+    private final Permutation[] _wirings;
+
+    /** The notches of _rotors when I was compiled, or null in each slot
+     *  after setRings. */
+    private final String[] _notchSources;
+
+    /** The plugboard permutation I was compiled from. */
+    private final Permutation _plugboardSource;
+
+    /** Whether the rotor in each slot moves. */
+    private final boolean[] _rotates;
+
+    /** Notch flags, indexed by slot * size + position. */
+    private final boolean[] _notches;
+
+    /** Forward wiring of every slot, indexed by _rows[slot] + input. */
+    private final int[] _forward;
+
+    /** Inverse wiring of every slot, indexed by _rows[slot] + input. */
+    private final int[] _backward;
+
+    /** The plugboard mapping. */
+    private final int[] _plugboard;
+
+    /** The current position of the rotor in each slot, possibly out of
+     *  date for moving rotors while they are scheduled. */
+    private final int[] _positions;
+
+    /** Start of the wiring table for the current position of each slot. */
+    private final int[] _rows;
+
+    /** The slots whose rotors move, from left to right. */
+    private final int[] _moving;
+
+    /** The state following each state of the moving rotors, where a
+     *  state encodes their positions as the digits of a base-size
+     *  number, leftmost first; null when stepping is not scheduled. */
+    private final int[] _successors;
+
+    /** The start of the wiring table of each moving rotor in each state,
+     *  indexed by state * _moving.length + j; null when _successors
+     *  is. */
+    private final int[] _schedule;
+
+    /** The current state of the moving rotors, if scheduled. */
+    private int _state;
+
+    /** The capacity of my core cache, or 0 if I have none. */
+    private final int _cacheCapacity;
+
+    /** Rotor core permutations at recently used positions, or null. */
+    private final CoreCache _cores;
+}
@@ -0,0 +1,113 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A bounded cache of rotor core permutations (the path through the
+ * rotors and reflector and back, without the plugboard), each keyed by
+ * the positions of all the rotors packed into a long.  The cache is
+ * direct-mapped: each key has a single slot, determined by a hash of the
+ * key, and a new entry replaces whatever occupied its slot.  This
+ * approximates least-recently-used eviction with no bookkeeping on a
+ * hit, which is the common case when the same positions recur across
+ * messages or search trials.
+ *
+ * @author Bradley Tian
+ */
+class CoreCache {
+
+    /** A cache of at most CAPACITY permutations of the range
+     *  0..SIZE - 1, with CAPACITY rounded up to a power of two. */
+    CoreCache(int size, int capacity) {
+        if (capacity < 1) {
+            throw error("Cache capacity must be positive.");
+        }
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity) {
+            slots <<= 1;
+        }
+        if ((long) slots * size > Integer.MAX_VALUE) {
+            throw error("Cache capacity too large.");
+        }
+        _size = size;
+        _mask = slots - 1;
+        _keys = new long[slots];
+        Arrays.fill(_keys, EMPTY);
+        _tables = new int[slots * size];
+    }
+
+    /** Return my permutations, each occupying size consecutive
+     *  elements starting at an offset returned by find or claim. */
+    int[] tables() {
+        return _tables;
+    }
+
+    /** Return the offset in tables() of the permutation for KEY, or -1
+     *  if it is not cached. */
+    int find(long key) {
+        int slot = slot(key);
+        if (_keys[slot] == key) {
+            _hits += 1;
+            return slot * _size;
+        }
+        return -1;
+    }
+
+    /** Evict the entry occupying the slot of KEY, if any, assign the
+     *  slot to KEY, and return the offset in tables() at which its
+     *  permutation is to be written. */
+    int claim(long key) {
+        int slot = slot(key);
+        _misses += 1;
+        _keys[slot] = key;
+        return slot * _size;
+    }
+
+    /** Return the number of slots, and so the maximum number of
+     *  permutations, I hold. */
+    int capacity() {
+        return _keys.length;
+    }
+
+    /** Return the number of successful finds. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of entries claimed. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the slot of KEY. */
+    private int slot(long key) {
+        long hash = key * HASH_MULTIPLIER;
+        return (int) (hash ^ (hash >>> 32)) & _mask;
+    }
+
+    /** Key marking an empty slot; no packed positions are negative. */
+    private static final long EMPTY = -1;
+
+    /** Odd multiplier spreading consecutive keys across slots. */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /** The size of each permutation. */
+    private final int _size;
+
+    /** Capacity less one, for reducing hashes to slots. */
+    private final int _mask;
+
+    /** The key of the entry in each slot, or EMPTY. */
+    private final long[] _keys;
+
+    /** The permutation of the entry in each slot, slot * size on. */
+    private final int[] _tables;
+
+    /** Number of successful finds. */
+    private long _hits;
+
+    /** Number of entries claimed. */
+    private long _misses;
+}
@@ -0,0 +1,374 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A long-running Enigma service.  The configuration is read once; each
+ * connection then carries one request, in the input format of Main
+ * (setting lines followed by messages), ended by the client shutting
+ * down its side of the connection.  The converted messages are streamed
+ * back as they are produced, in the output format of Main, and the
+ * connection is closed.  If the request is in error, the output produced
+ * up to that point, which may end partway through a message line, is
+ * followed by "Error: " and the message Main would print, and a line
+ * separator.  Each setting line creates a fresh MachineTemplate
+ * cursor, so requests share no mutable state.
+ *
+ * Requests are handled on a fixed pool of threads (this JDK has no
+ * virtual threads), and no more connections are accepted than there
+ * are threads to serve them, so a burst of clients waits in the
+ * listen backlog rather than in memory.  A connection on which no
+ * data has been read or written for the idle timeout, one minute by
+ * default, is closed, so that idle clients cannot hold every thread.
+ *
+ * @author Bradley Tian
+ */
+class EnigmaServer implements AutoCloseable {
+
+    /**
+     * A server converting messages with cursors of TEMPLATE, handling at
+     * most THREADS requests at once, listening at ADDRESS: a TCP address
+     * or a UnixDomainSocketAddress.
+     */
+    EnigmaServer(MachineTemplate template, int threads,
+                 SocketAddress address) throws IOException {
+        if (threads < 1) {
+            throw error("Thread count must be positive.");
+        }
+        _template = template;
+        _permits = new Semaphore(threads);
+        _workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "enigma-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "enigma-server-idle");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (address instanceof UnixDomainSocketAddress) {
+            _channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            _channel = ServerSocketChannel.open();
+        }
+        _channel.bind(address, BACKLOG);
+    }
+
+    /** Return the address at which I listen. */
+    SocketAddress address() throws IOException {
+        return _channel.getLocalAddress();
+    }
+
+    /** Close connections idle for more than MILLIS milliseconds, or
+     *  never if MILLIS is 0. */
+    void setIdleTimeout(long millis) {
+        if (millis < 0) {
+            throw error("Idle timeout must not be negative.");
+        }
+        _idleNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /** Return the number of requests completed, successfully or not. */
+    long requests() {
+        return _requests.get();
+    }
+
+    /**
+     * Accept and handle connections until I am closed.
+     */
+    void serve() throws IOException {
+        try {
+            while (true) {
+                _permits.acquireUninterruptibly();
+                SocketChannel client;
+                try {
+                    client = _channel.accept();
+                } catch (IOException excp) {
+                    _permits.release();
+                    throw excp;
+                }
+                _workers.execute(() -> {
+                    try {
+                        handle(client);
+                    } finally {
+                        _permits.release();
+                        _requests.incrementAndGet();
+                    }
+                });
+            }
+        } catch (ClosedChannelException excp) {
+            return;
+        }
+    }
+
+    /** Convert the request read from CLIENT, streaming the response back
+     *  to CLIENT, and close it, closing it early if it is idle for more
+     *  than the idle timeout. */
+    private void handle(SocketChannel client) {
+        IdleWatch watch = new IdleWatch(client);
+        long idle = _idleNanos;
+        ScheduledFuture<?> check = null;
+        if (idle > 0) {
+            long period = Math.max(idle / IDLE_CHECKS, 1);
+            check = _timer.scheduleWithFixedDelay(() -> watch.check(idle),
+                    period, period, TimeUnit.NANOSECONDS);
+        }
+        try (client) {
+            Writer output = new BufferedWriter(new OutputStreamWriter(
+                    watch.output()), CharMessageProcessor.BUFFER_SIZE);
+            try {
+                new CharMessageProcessor(_template, new InputStreamReader(
+                        watch.input()), output).process();
+            } catch (EnigmaException excp) {
+                output.write(String.format("Error: %s%n",
+                        excp.getMessage()));
+            }
+            output.flush();
+        } catch (IOException excp) {
+            return;
+        } finally {
+            if (check != null) {
+                check.cancel(false);
+            }
+        }
+    }
+
+    /** Stop accepting connections, and wait for the requests in progress
+     *  to finish. */
+    @Override
+    public void close() throws IOException {
+        if (!_channel.isOpen()) {
+            return;
+        }
+        SocketAddress address = _channel.getLocalAddress();
+        _channel.close();
+        _workers.shutdown();
+        _timer.shutdown();
+        try {
+            _workers.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address)
+                    .getPath());
+        }
+    }
+
+    /**
+     * Serve the configuration in the file ARGS[0] at ARGS[1], which is
+     * either a port number, listened to on the loopback interface, or
+     * the path of a Unix-domain socket.  ARGS[2], if present, is the
+     * number of requests handled at once, by default the number of
+     * processors.
+     */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 3) {
+                throw error("Usage: java enigma.EnigmaServer CONFIG "
+                        + "PORT|SOCKET [THREADS]");
+            }
+            int threads = Runtime.getRuntime().availableProcessors();
+            if (args.length == 3) {
+                threads = Integer.parseInt(args[2]);
+            }
+            SocketAddress address;
+            if (args[1].matches("\\d+")) {
+                address = new InetSocketAddress(
+                        InetAddress.getLoopbackAddress(),
+                        Integer.parseInt(args[1]));
+            } else {
+                Path path = Paths.get(args[1]);
+                removeStaleSocket(path);
+                address = UnixDomainSocketAddress.of(path);
+            }
+            MachineTemplate template =
+                    new MachineTemplate(Main.readConfig(args[0]));
+            try (EnigmaServer server = new EnigmaServer(template, threads,
+                    address)) {
+                System.err.printf("Listening at %s%n", server.address());
+                server.serve();
+            }
+            return;
+        } catch (IOException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Delete PATH if it is a socket at which no server is listening,
+     * left behind by a server that did not close, so that a new server
+     * may listen there.  Anything else at PATH is left alone and
+     * reported as an error.
+     */
+    static void removeStaleSocket(Path path) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path,
+                    BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException excp) {
+            return;
+        }
+        if (!attributes.isOther()) {
+            throw error("%s exists", path);
+        }
+        if (listening(path)) {
+            throw error("%s is in use", path);
+        }
+        Files.delete(path);
+    }
+
+    /** Return true iff a server accepts connections at the socket
+     *  PATH. */
+    private static boolean listening(Path path) {
+        SocketChannel probe;
+        try {
+            probe = SocketChannel.open(UnixDomainSocketAddress.of(path));
+        } catch (IOException excp) {
+            return false;
+        }
+        try {
+            probe.close();
+        } catch (IOException excp) {
+            /* Connected all the same. */
+        }
+        return true;
+    }
+
+    /**
+     * The streams of a client connection, which record when a read or
+     * write last started or finished, so that the connection can be
+     * closed once it has been idle for too long.
+     */
+    private static class IdleWatch {
+
+        /** A watch over CLIENT, which is active now. */
+        IdleWatch(SocketChannel client) {
+            _client = client;
+            _active = System.nanoTime();
+        }
+
+        /** Return a stream reading from my client. */
+        InputStream input() {
+            return new FilterInputStream(Channels.newInputStream(_client)) {
+                @Override
+                public int read(byte[] b, int off, int len)
+                    throws IOException {
+                    _active = System.nanoTime();
+                    try {
+                        return in.read(b, off, len);
+                    } finally {
+                        _active = System.nanoTime();
+                    }
+                }
+            };
+        }
+
+        /** Return a stream writing to my client. */
+        OutputStream output() {
+            return new FilterOutputStream(
+                    Channels.newOutputStream(_client)) {
+                @Override
+                public void write(byte[] b, int off, int len)
+                    throws IOException {
+                    _active = System.nanoTime();
+                    try {
+                        out.write(b, off, len);
+                    } finally {
+                        _active = System.nanoTime();
+                    }
+                }
+            };
+        }
+
+        /** Close my client if it has been idle for more than IDLE
+         *  nanoseconds, interrupting any read or write in progress. */
+        void check(long idle) {
+            if (System.nanoTime() - _active > idle) {
+                try {
+                    _client.close();
+                } catch (IOException excp) {
+                    return;
+                }
+            }
+        }
+
+        /** The connection watched. */
+        private final SocketChannel _client;
+
+        /** Time at which a read or write on _client last started or
+         *  finished. */
+        private volatile long _active;
+    }
+
+    /** Maximum number of connections waiting to be accepted. */
+    static final int BACKLOG = 1024;
+
+    /** Time allowed for requests in progress when closing. */
+    private static final long SHUTDOWN_SECONDS = 30;
+
+    /** Default time after which an idle connection is closed. */
+    static final long IDLE_SECONDS = 60;
+
+    /** Number of times a connection is checked for idleness in each
+     *  idle timeout. */
+    private static final int IDLE_CHECKS = 4;
+
+    /** The configuration served. */
+    private final MachineTemplate _template;
+
+    /** Permits for the requests that may be in progress. */
+    private final Semaphore _permits;
+
+    /** Threads handling requests. */
+    private final ExecutorService _workers;
+
+    /** Thread closing idle connections. */
+    private final ScheduledExecutorService _timer;
+
+    /** Time in nanoseconds after which an idle connection is closed, or
+     *  0 for none. */
+    private volatile long _idleNanos = TimeUnit.SECONDS.toNanos(IDLE_SECONDS);
+
+    /** The listening channel. */
+    private final ServerSocketChannel _channel;
+
+    /** Number of requests completed. */
+    private final AtomicLong _requests = new AtomicLong();
+}
@@ -0,0 +1,183 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the EnigmaServer class.
+ *  @author Bradley Tian
+ */
+public class EnigmaServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return the output of Main's processing of INPUT. */
+    private static String expected(String input) {
+        StringWriter output = new StringWriter();
+        new CharMessageProcessor(TestUtils.machine(), new StringReader(input),
+                output).process();
+        return output.toString();
+    }
+
+    /** Send REQUEST to the server at ADDRESS and return its response. */
+    private static String request(InetSocketAddress address, String request)
+        throws IOException {
+        Charset charset = Charset.defaultCharset();
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            channel.write(charset.encode(request));
+            channel.shutdownOutput();
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            StringBuilder response = new StringBuilder();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                response.append(charset.decode(buffer));
+                buffer.clear();
+            }
+            return response.toString();
+        }
+    }
+
+    /** Return a started thread serving the requests to SERVER until it
+     *  is closed. */
+    private static Thread serve(EnigmaServer server) {
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException excp) {
+                throw new AssertionError(excp);
+            }
+        });
+        serving.start();
+        return serving;
+    }
+
+    @Test
+    public void testServer() throws Exception {
+        String[] inputs = new String[12];
+        for (int k = 0; k < inputs.length; k++) {
+            inputs[k] = String.format("* B Beta III IV I A%sLE (YF) (ZH)%n"
+                    + "HELLO WORLD %s%n%n* B Beta I II III ZZZZ%n%s%n",
+                    AZ.toChar(k), "ABCDEFGHIJ".repeat(k),
+                    "QWERTY".repeat(100 * k));
+        }
+        MachineTemplate template = new MachineTemplate(TestUtils.machine());
+        EnigmaServer server = new EnigmaServer(template, 3,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        Thread serving = serve(server);
+        try {
+            InetSocketAddress address = (InetSocketAddress) server.address();
+            String[] responses = new String[inputs.length];
+            List<Thread> clients = new ArrayList<>();
+            for (int k = 0; k < inputs.length; k++) {
+                int i = k;
+                Thread client = new Thread(() -> {
+                    try {
+                        responses[i] = request(address, inputs[i]);
+                    } catch (IOException excp) {
+                        responses[i] = excp.toString();
+                    }
+                });
+                clients.add(client);
+                client.start();
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+            for (int k = 0; k < inputs.length; k++) {
+                assertEquals(expected(inputs[k]), responses[k]);
+            }
+
+            String error = request(address, String.format(
+                    "* B Beta III IV I AAAA%nHELLO%n* B Beta III IV I AA%n"
+                    + "WORLD%n"));
+            assertEquals(expected(String.format(
+                    "* B Beta III IV I AAAA%nHELLO%n"))
+                    + String.format("Error: Wheel settings too short.%n"),
+                    error);
+        } finally {
+            server.close();
+        }
+        serving.join();
+        assertEquals(inputs.length + 1, server.requests());
+    }
+
+    @Test
+    public void testIdleTimeout() throws Exception {
+        MachineTemplate template = new MachineTemplate(TestUtils.machine());
+        EnigmaServer server = new EnigmaServer(template, 1,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.setIdleTimeout(200);
+        Thread serving = serve(server);
+        try {
+            InetSocketAddress address = (InetSocketAddress) server.address();
+            try (SocketChannel idle = SocketChannel.open(address)) {
+                String input = String.format("* B Beta III IV I AXLE%n"
+                        + "HELLO WORLD%n");
+                assertEquals(expected(input), request(address, input));
+                assertEquals(-1, idle.read(ByteBuffer.allocate(1)));
+            }
+        } finally {
+            server.close();
+        }
+        serving.join();
+        try {
+            server.setIdleTimeout(-1);
+            fail("Negative idle timeout accepted.");
+        } catch (EnigmaException excp) {
+            assertEquals("Idle timeout must not be negative.",
+                    excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testStaleSocket() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path file = dir.resolve("config.txt");
+        Files.writeString(file, "not a socket");
+        try {
+            EnigmaServer.removeStaleSocket(file);
+            fail("Regular file removed.");
+        } catch (EnigmaException excp) {
+            assertEquals(file + " exists", excp.getMessage());
+        }
+        assertEquals("not a socket", Files.readString(file));
+
+        Path socket = dir.resolve("enigma.sock");
+        EnigmaServer.removeStaleSocket(socket);
+        try (ServerSocketChannel live = ServerSocketChannel.open(
+                StandardProtocolFamily.UNIX)) {
+            live.bind(UnixDomainSocketAddress.of(socket));
+            try {
+                EnigmaServer.removeStaleSocket(socket);
+                fail("Live socket removed.");
+            } catch (EnigmaException excp) {
+                assertEquals(socket + " is in use", excp.getMessage());
+            }
+        }
+        assertTrue(Files.exists(socket));
+        EnigmaServer.removeStaleSocket(socket);
+        assertFalse(Files.exists(socket));
+        Files.delete(file);
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,173 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * The output stage of message conversion: writes converted message
+ * bytes in groups separated by blanks, optionally breaking lines of
+ * more than a given number of message bytes, into a reusable buffer
+ * that is written to a channel only when it fills or is flushed.
+ * Nothing is allocated per byte, per group or per line.
+ *
+ * @author Bradley Tian
+ */
+class GroupWriter {
+
+    /**
+     * A writer to OUTPUT of groups of GROUPSIZE bytes, each followed by
+     * a blank, with a line separator after every LINEWIDTH message
+     * bytes in place of the blank, if LINEWIDTH is positive, buffering
+     * BUFFERSIZE bytes.
+     */
+    GroupWriter(WritableByteChannel output, int groupSize, int lineWidth,
+                int bufferSize) {
+        if (groupSize <= 0 || lineWidth < 0) {
+            throw error("Invalid output format.");
+        }
+        _output = output;
+        _groupSize = groupSize;
+        _lineWidth = lineWidth;
+        _buffer = new byte[Math.max(bufferSize,
+                2 * (SEPARATOR.length + 1))];
+        _limit = _buffer.length - SEPARATOR.length - 1;
+        restart();
+    }
+
+    /** A writer to OUTPUT in the format of Main: groups of five and one
+     *  line per message line. */
+    GroupWriter(WritableByteChannel output) {
+        this(output, MessageProcessor.GROUP_SIZE, 0, BUFFER_SIZE);
+    }
+
+    /** Write B, the next byte of a converted message. */
+    void put(byte b) throws IOException {
+        if (_length >= _limit) {
+            drain();
+        }
+        _buffer[_length++] = b;
+        if (--_count == 0) {
+            boundary();
+        }
+    }
+
+    /** Write N line separators, starting a new line and group.  A line
+     *  just broken at the line width counts as one of them. */
+    void newLines(int n) throws IOException {
+        if (_wrapped && _count == _step && n > 0) {
+            n -= 1;
+        }
+        for (int i = 0; i < n; i++) {
+            if (_length >= _limit) {
+                drain();
+            }
+            separator();
+        }
+        restart();
+    }
+
+    /** Write out everything buffered. */
+    void flush() throws IOException {
+        drain();
+    }
+
+    /**
+     * Write the separator that follows the last _step message bytes:
+     * a line separator if they complete a line of the line width, a
+     * blank if they complete a group, and otherwise nothing.  Then set
+     * _count to the number of bytes until the next separator.
+     */
+    private void boundary() {
+        _groupLeft -= _step;
+        _lineLeft -= _step;
+        _wrapped = _lineWidth > 0 && _lineLeft == 0;
+        if (_wrapped) {
+            separator();
+            _groupLeft = _groupSize;
+            _lineLeft = _lineWidth;
+        } else if (_groupLeft == 0) {
+            _buffer[_length++] = ' ';
+            _groupLeft = _groupSize;
+        }
+        next();
+    }
+
+    /** Start a new line and group. */
+    private void restart() {
+        _groupLeft = _groupSize;
+        _lineLeft = _lineWidth;
+        _wrapped = false;
+        next();
+    }
+
+    /** Set _step and _count to the number of message bytes until the
+     *  end of the current group or line. */
+    private void next() {
+        _step = _lineWidth > 0 ? Math.min(_groupLeft, _lineLeft)
+                : _groupLeft;
+        _count = _step;
+    }
+
+    /** Append a line separator to the buffer, which must have room. */
+    private void separator() {
+        System.arraycopy(SEPARATOR, 0, _buffer, _length, SEPARATOR.length);
+        _length += SEPARATOR.length;
+    }
+
+    /** Write the contents of the buffer to the output. */
+    private void drain() throws IOException {
+        ByteBuffer out = ByteBuffer.wrap(_buffer, 0, _length);
+        while (out.hasRemaining()) {
+            _output.write(out);
+        }
+        _length = 0;
+    }
+
+    /** Default size of the buffer. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Bytes of MessageProcessor.LINE_SEPARATOR. */
+    private static final byte[] SEPARATOR =
+            MessageProcessor.LINE_SEPARATOR.getBytes(
+                    StandardCharsets.US_ASCII);
+
+    /** Destination of the output. */
+    private final WritableByteChannel _output;
+
+    /** Number of message bytes in a group. */
+    private final int _groupSize;
+
+    /** Number of message bytes in a line, or 0 for no limit. */
+    private final int _lineWidth;
+
+    /** Output buffer, holding _buffer[0.._length-1] not yet written. */
+    private final byte[] _buffer;
+
+    /** Largest _length at which a byte and a separator still fit. */
+    private final int _limit;
+
+    /** Number of bytes in _buffer. */
+    private int _length;
+
+    /** Number of message bytes until the next separator. */
+    private int _count;
+
+    /** Number of message bytes from the last separator to the next. */
+    private int _step;
+
+    /** Number of message bytes left in the current group at the last
+     *  separator. */
+    private int _groupLeft;
+
+    /** Number of message bytes left in the current line at the last
+     *  separator, if _lineWidth is positive. */
+    private int _lineLeft;
+
+    /** True iff the last separator written broke a line at the line
+     *  width. */
+    private boolean _wrapped;
+}
@@ -0,0 +1,83 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the GroupWriter class.
+ *  @author Bradley Tian
+ */
+public class GroupWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Line separator. */
+    private static final String NL = System.lineSeparator();
+
+    /** Return the output of a writer with GROUPSIZE, LINEWIDTH and
+     *  BUFFERSIZE given each line of LINES in turn. */
+    private static String write(int groupSize, int lineWidth,
+                                int bufferSize, String... lines)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter writer = new GroupWriter(Channels.newChannel(bytes),
+                groupSize, lineWidth, bufferSize);
+        for (String line : lines) {
+            for (int i = 0; i < line.length(); i++) {
+                writer.put((byte) line.charAt(i));
+            }
+            writer.newLines(1);
+        }
+        writer.flush();
+        return bytes.toString();
+    }
+
+    @Test
+    public void testGroups() throws IOException {
+        assertEquals("HELLO WORLD " + NL + "ABC" + NL + NL,
+                write(5, 0, 1024, "HELLOWORLD", "ABC", ""));
+        assertEquals("HELLO WORLD " + NL,
+                write(5, 0, 1, "HELLOWORLD"));
+        assertEquals("HEL LOW ORL D" + NL,
+                write(3, 0, 1024, "HELLOWORLD"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter writer = new GroupWriter(Channels.newChannel(bytes));
+        writer.put((byte) 'A');
+        assertEquals("", bytes.toString());
+        writer.flush();
+        assertEquals("A", bytes.toString());
+    }
+
+    @Test
+    public void testLineWidth() throws IOException {
+        assertEquals("HELLO WORL" + NL + "D" + NL,
+                write(5, 9, 1024, "HELLOWORLD"));
+        assertEquals("HELLO" + NL + "WORLD" + NL + NL,
+                write(5, 5, 1024, "HELLOWORLD", ""));
+        assertEquals("HELLO" + NL + "WORLD" + NL,
+                write(5, 5, 1024, "HELLOWORLD"));
+        assertEquals("HE LL" + NL + "OW OR" + NL + "LD " + NL + "A" + NL,
+                write(2, 4, 3, "HELLOWORLD", "A"));
+        String long1 = "A".repeat(100000);
+        String expected = ("AAAAA ".repeat(14) + "AAAAA" + NL).repeat(1333)
+                + "AAAAA ".repeat(5) + NL;
+        assertEquals(expected, write(5, 75, 4096, long1));
+    }
+
+    @Test
+    public void testInvalidFormat() {
+        try {
+            new GroupWriter(Channels.newChannel(new ByteArrayOutputStream()),
+                    0, 0, 1024);
+            fail("Empty groups accepted.");
+        } catch (EnigmaException excp) {
+            assertEquals("Invalid output format.", excp.getMessage());
+        }
+    }
+}
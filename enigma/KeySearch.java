@@ -0,0 +1,709 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A known-plaintext key search in the manner of the Turing-Welchman
+ * Bombe.  Given a crib (a stretch of plaintext) and the ciphertext it
+ * produced, it tries every rotor order that can be built from the rotors
+ * of a Machine, every start position and, optionally, every ring setting
+ * that affects stepping.  Each pair of crib and cipher letters links the
+ * two letters through the rotor core at that keystroke; following these
+ * links from a guess at the plugboard partner of one letter either
+ * contradicts itself somewhere around a loop of the resulting menu, or
+ * yields a consistent partial plugboard.  Keys for which every guess
+ * leads to a contradiction are discarded.  The search is divided among
+ * the threads of a fork-join pool, each with its own rotors and compiled
+ * machine.
+ *
+ * @author Bradley Tian
+ */
+class KeySearch {
+
+    /**
+     * A search for keys of machines configured like MACHINE under which
+     * CRIB encrypts to CIPHER, with the first character of CRIB
+     * converted OFFSET keystrokes after the start of the message.
+     * Only the alphabet, slots, pawls and available rotors of MACHINE
+     * are used; MACHINE itself is not modified.
+     */
+    KeySearch(Machine machine, String crib, String cipher, int offset) {
+        if (crib.length() != cipher.length()) {
+            throw error("Crib and ciphertext differ in length.");
+        } else if (crib.isEmpty()) {
+            throw error("Crib is empty.");
+        } else if (offset < 0) {
+            throw error("Crib offset must not be negative.");
+        }
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _numRotors = machine.numRotors();
+        _numPawls = machine.numPawls();
+        _rotors = new ArrayList<>(machine.rotors());
+        _offset = offset;
+        _length = crib.length();
+        _crib = toInts(crib);
+        _cipher = toInts(cipher);
+        _orders = rotorOrders(_rotors, _numRotors, _numPawls);
+        buildMenu();
+    }
+
+    /** A search for keys under which CRIB encrypts to CIPHER, at the
+     *  start of a message, on machines configured like MACHINE. */
+    KeySearch(Machine machine, String crib, String cipher) {
+        this(machine, crib, cipher, 0);
+    }
+
+    /** Return the alphabet indices of the characters of S. */
+    private int[] toInts(String s) {
+        int[] result = new int[s.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = _alphabet.toInt(s.charAt(i));
+            if (result[i] == -1) {
+                throw error("Crib character not in alphabet.");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return every rotor order that can be built from ROTORS for a
+     * machine with NUMROTORS slots and NUMPAWLS pawls: a reflector, then
+     * non-moving rotors, then moving rotors, with no rotor used twice.
+     */
+    static List<String[]> rotorOrders(Collection<Rotor> rotors,
+                                      int numRotors, int numPawls) {
+        ArrayList<String> reflectors = new ArrayList<>();
+        ArrayList<String> fixed = new ArrayList<>();
+        ArrayList<String> moving = new ArrayList<>();
+        for (Rotor rotor : rotors) {
+            if (rotor.reflecting()) {
+                reflectors.add(rotor.name());
+            } else if (rotor.rotates()) {
+                moving.add(rotor.name());
+            } else {
+                fixed.add(rotor.name());
+            }
+        }
+        List<String[]> result = new ArrayList<>();
+        String[] order = new String[numRotors];
+        for (String reflector : reflectors) {
+            order[0] = reflector;
+            addOrders(result, order, 1, numRotors - numPawls, fixed, moving);
+        }
+        return result;
+    }
+
+    /** Add to RESULT every completion of ORDER from slot K onwards,
+     *  filling slots before FIRSTMOVING from FIXED and the others from
+     *  MOVING. */
+    private static void addOrders(List<String[]> result, String[] order,
+                                  int k, int firstMoving, List<String> fixed,
+                                  List<String> moving) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        List<String> choices = k < firstMoving ? fixed : moving;
+        for (String name : choices) {
+            boolean used = false;
+            for (int i = 1; i < k; i++) {
+                used |= order[i].equals(name);
+            }
+            if (!used) {
+                order[k] = name;
+                addOrders(result, order, k + 1, firstMoving, fixed, moving);
+            }
+        }
+    }
+
+    /**
+     * Build the menu: for each letter, the letters it is linked to by
+     * the crib and the keystrokes linking them; then group the linked
+     * letters into connected components, each tested from its most
+     * linked letter.
+     */
+    private void buildMenu() {
+        int[] degree = new int[_size];
+        for (int i = 0; i < _length; i++) {
+            degree[_crib[i]] += 1;
+            degree[_cipher[i]] += 1;
+        }
+        _links = new int[_size][];
+        _linkSteps = new int[_size][];
+        for (int c = 0; c < _size; c++) {
+            _links[c] = new int[degree[c]];
+            _linkSteps[c] = new int[degree[c]];
+        }
+        int[] filled = new int[_size];
+        for (int i = 0; i < _length; i++) {
+            link(_crib[i], _cipher[i], i, filled);
+            link(_cipher[i], _crib[i], i, filled);
+        }
+
+        int[] component = new int[_size];
+        Arrays.fill(component, -1);
+        ArrayList<Integer> registers = new ArrayList<>();
+        int letters = 0;
+        for (int c = 0; c < _size; c++) {
+            if (degree[c] == 0 || component[c] != -1) {
+                continue;
+            }
+            int best = c;
+            ArrayList<Integer> queue = new ArrayList<>();
+            queue.add(c);
+            component[c] = registers.size();
+            for (int k = 0; k < queue.size(); k++) {
+                int u = queue.get(k);
+                if (degree[u] > degree[best]) {
+                    best = u;
+                }
+                for (int w : _links[u]) {
+                    if (component[w] == -1) {
+                        component[w] = registers.size();
+                        queue.add(w);
+                    }
+                }
+            }
+            letters += queue.size();
+            registers.add(best);
+        }
+        registers.sort((a, b) -> degree[b] - degree[a]);
+        _registers = new int[registers.size()];
+        for (int k = 0; k < _registers.length; k++) {
+            _registers[k] = registers.get(k);
+        }
+        _loops = _length - letters + _registers.length;
+    }
+
+    /** Record in the menu that U is linked to W at keystroke I of the
+     *  crib, using FILLED to count the links recorded for each letter. */
+    private void link(int u, int w, int i, int[] filled) {
+        _links[u][filled[u]] = w;
+        _linkSteps[u][filled[u]] = i;
+        filled[u] += 1;
+    }
+
+    /**
+     * Return the number of independent loops in the menu.  Without
+     * loops, almost every key survives.
+     */
+    int menuLoops() {
+        return _loops;
+    }
+
+    /** Return the number of rotor orders searched. */
+    int rotorOrderCount() {
+        return _orders.size();
+    }
+
+    /** Limit the search to the rotor orders in ORDERS, each naming the
+     *  rotors of every slot from the reflector on. */
+    void setRotorOrders(Collection<String[]> orders) {
+        for (String[] order : orders) {
+            if (order.length != _numRotors) {
+                throw error("Invalid rotor inputs.");
+            }
+        }
+        _orders = new ArrayList<>(orders);
+    }
+
+    /**
+     * Set whether ring settings are searched, according to RINGS.  Only
+     * the rings of moving rotors with a moving rotor to their left
+     * affect the key beyond a change of start position, so only those
+     * are varied; the others are reported at their 0 setting.
+     */
+    void setSearchRings(boolean rings) {
+        _searchRings = rings;
+    }
+
+    /** Use PARALLELISM threads for the search. */
+    void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw error("Parallelism must be positive.");
+        }
+        _parallelism = parallelism;
+    }
+
+    /** Stop collecting candidates after the first MAX found.  The search
+     *  itself continues to the end. */
+    void setMaxCandidates(int max) {
+        _maxCandidates = max;
+    }
+
+    /**
+     * Search every key and return the candidates that survive, up to
+     * the limit set by setMaxCandidates.
+     */
+    List<Candidate> search() {
+        int ringSlots = _searchRings ? Math.max(0, _numPawls - 1) : 0;
+        long rings = 1;
+        for (int i = 0; i < ringSlots; i++) {
+            rings *= _size;
+        }
+        long units = _orders.size() * rings * _size;
+        if (units > Integer.MAX_VALUE) {
+            throw error("Search space too large.");
+        }
+        _ringCombinations = (int) rings;
+        _tested.reset();
+        _found.clear();
+        _foundCount.set(0);
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(_parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, (int) units).parallel()
+                    .forEach(this::searchUnit)).get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("Key search interrupted.");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof EnigmaException) {
+                throw (EnigmaException) cause;
+            }
+            throw error("Key search failed: %s", cause);
+        } finally {
+            pool.shutdown();
+            _elapsed = System.nanoTime() - start;
+        }
+        return new ArrayList<>(_found);
+    }
+
+    /** Return the number of candidates found by the last search,
+     *  including any beyond the limit set by setMaxCandidates. */
+    int candidatesFound() {
+        return _foundCount.get();
+    }
+
+    /** Return the number of keys tested by the last search. */
+    long keysTested() {
+        return _tested.sum();
+    }
+
+    /** Return the duration of the last search in nanoseconds. */
+    long elapsedNanos() {
+        return _elapsed;
+    }
+
+    /** Return the rate at which the last search tested keys, per
+     *  second. */
+    double keysPerSecond() {
+        return _elapsed == 0 ? 0 : keysTested() * 1e9 / _elapsed;
+    }
+
+    /**
+     * Search unit number UNIT: one rotor order, one combination of
+     * searched rings and one position of the leftmost rotor, with every
+     * position of the rotors to its right.
+     */
+    private void searchUnit(int unit) {
+        int first = unit % _size;
+        int ringCombination = unit / _size % _ringCombinations;
+        String[] order = _orders.get(unit / _size / _ringCombinations);
+        int[] rings = new int[_numRotors];
+        for (int slot = _numRotors - 1, r = ringCombination;
+             r > 0; slot--, r /= _size) {
+            rings[slot] = r % _size;
+        }
+
+        Worker worker = _workers.get();
+        Machine machine = worker.machine;
+        machine.insertRotors(order);
+        StringBuilder ringText = new StringBuilder();
+        for (int slot = 1; slot < _numRotors; slot++) {
+            ringText.append(_alphabet.toChar(rings[slot]));
+        }
+        machine.setRings(ringText.toString());
+        CompiledMachine engine = machine.compile();
+        worker.engine = engine;
+
+        int[] positions = new int[_numRotors];
+        positions[1] = first;
+        long tested = 0;
+        int[] plugs = worker.plugs;
+        int stride = engine.stateSize();
+        do {
+            engine.setPositions(positions);
+            engine.skip(_offset);
+            for (int i = 0; i < _length; i++) {
+                engine.skip(1);
+                engine.saveState(worker.states, i * stride);
+            }
+            worker.nextKey();
+            tested += 1;
+            Arrays.fill(plugs, -1);
+            if (consistent(0, worker)) {
+                report(order, positions, rings, plugs);
+            }
+        } while (nextPositions(positions, _size));
+        _tested.add(tested);
+    }
+
+    /** Advance POSITIONS, each in the range 0..SIZE - 1, to the next
+     *  combination of positions of slots 2 onwards, returning false
+     *  once all have been visited. */
+    static boolean nextPositions(int[] positions, int size) {
+        for (int slot = positions.length - 1; slot >= 2; slot--) {
+            positions[slot] += 1;
+            if (positions[slot] < size) {
+                return true;
+            }
+            positions[slot] = 0;
+        }
+        return false;
+    }
+
+    /**
+     * Return true iff some assignment of a plugboard partner to the
+     * register of every menu component from K onwards, extending the
+     * plugboard partners deduced by WORKER for its current key, is free
+     * of contradictions.  On success, WORKER's plugs hold the partners
+     * deduced, or -1 for letters not deduced.
+     */
+    private boolean consistent(int k, Worker worker) {
+        if (k == _registers.length) {
+            return true;
+        }
+        int register = _registers[k];
+        int[] plugs = worker.plugs;
+        int[] saved = worker.stack[k];
+        System.arraycopy(plugs, 0, saved, 2 * _size, _size);
+        for (int guess = 0; guess < _size; guess++) {
+            if (propagate(register, guess, worker, saved)
+                    && consistent(k + 1, worker)) {
+                return true;
+            }
+            System.arraycopy(saved, 2 * _size, plugs, 0, _size);
+        }
+        return false;
+    }
+
+    /**
+     * Assume that the plugboard exchanges REGISTER and GUESS, then
+     * deduce the partners of every letter linked to REGISTER, recording
+     * them in WORKER's plugs.  Return false on a contradiction.  The first
+     * 2 * alphabet-size elements of WORK are used as a queue, in which
+     * each letter appears at most once, once its partner is deduced.
+     */
+    private boolean propagate(int register, int guess, Worker worker,
+                              int[] work) {
+        int[] plugs = worker.plugs;
+        int head = 0;
+        int tail = 0;
+        if (!plug(register, guess, plugs)) {
+            return false;
+        }
+        work[tail++] = register;
+        if (guess != register && _links[guess].length > 0) {
+            work[tail++] = guess;
+        }
+        while (head < tail) {
+            int u = work[head++];
+            int[] links = _links[u];
+            int[] steps = _linkSteps[u];
+            for (int j = 0; j < links.length; j++) {
+                int w = links[j];
+                int y = worker.core(steps[j], plugs[u]);
+                if (plugs[w] == y) {
+                    continue;
+                } else if (!plug(w, y, plugs)) {
+                    return false;
+                }
+                work[tail++] = w;
+                if (y != w && _links[y].length > 0) {
+                    work[tail++] = y;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Record in PLUGS that the plugboard exchanges U and V, returning
+     *  false if that contradicts what PLUGS already records. */
+    private static boolean plug(int u, int v, int[] plugs) {
+        if (plugs[u] == -1 && plugs[v] == -1) {
+            plugs[u] = v;
+            plugs[v] = u;
+            return true;
+        }
+        return plugs[u] == v;
+    }
+
+    /** Record a candidate with rotors ORDER, effective rotor offsets
+     *  POSITIONS, ring settings RINGS and plugboard partners PLUGS. */
+    private void report(String[] order, int[] positions, int[] rings,
+                        int[] plugs) {
+        if (_foundCount.getAndIncrement() >= _maxCandidates) {
+            return;
+        }
+        StringBuilder setting = new StringBuilder();
+        StringBuilder ringText = new StringBuilder();
+        for (int slot = 1; slot < _numRotors; slot++) {
+            setting.append(_alphabet.toChar(
+                    Math.floorMod(positions[slot] + rings[slot], _size)));
+            ringText.append(_alphabet.toChar(rings[slot]));
+        }
+        StringBuilder cycles = new StringBuilder();
+        for (int c = 0; c < _size; c++) {
+            if (plugs[c] > c) {
+                cycles.append(cycles.length() == 0 ? "(" : " (")
+                        .append(_alphabet.toChar(c))
+                        .append(_alphabet.toChar(plugs[c])).append(')');
+            }
+        }
+        _found.add(new Candidate(order.clone(), setting.toString(),
+                ringText.toString(), cycles.toString()));
+    }
+
+    /** A key that survived the search. */
+    static class Candidate {
+
+        /** A key with rotors ROTORS, start positions SETTING, ring
+         *  settings RINGS and plugboard cycles PLUGBOARD. */
+        Candidate(String[] rotors, String setting, String rings,
+                  String plugboard) {
+            _rotorNames = rotors;
+            _setting = setting;
+            _rings = rings;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of my rotors, from the reflector on. */
+        String[] rotors() {
+            return _rotorNames.clone();
+        }
+
+        /** Return my start positions. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return my ring settings. */
+        String rings() {
+            return _rings;
+        }
+
+        /** Return the plugboard pairs deduced from the crib, in cycle
+         *  notation.  Letters not reached by the menu are left
+         *  unplugged. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Returns my key as an input setting line. */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotorNames) + " " + _setting
+                    + " " + _rings
+                    + (_plugboard.isEmpty() ? "" : " " + _plugboard);
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotorNames;
+
+        /** My start positions. */
+        private final String _setting;
+
+        /** My ring settings. */
+        private final String _rings;
+
+        /** My plugboard cycles. */
+        private final String _plugboard;
+    }
+
+    /** The state used by one search thread. */
+    private class Worker {
+
+        /** A worker with its own copies of the available rotors. */
+        Worker() {
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            for (Rotor rotor : _rotors) {
+                rotors.add(rotor.copy());
+            }
+            machine = new Machine(_alphabet, _numRotors, _numPawls, rotors);
+            states = new int[_length * 2 * _numRotors];
+            core = new int[_length * _size];
+            stamps = new int[_length * _size];
+            plugs = new int[_size];
+            stack = new int[Math.max(1, _registers.length)][3 * _size];
+        }
+
+        /** Start work on a new key, whose rotor positions at each
+         *  keystroke of the crib have been saved in states. */
+        void nextKey() {
+            stamp += 1;
+            if (stamp == 0) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+        }
+
+        /** Return the result of passing C through the rotor core of the
+         *  current key at keystroke STEP of the crib, computing it only
+         *  on first use. */
+        int core(int step, int c) {
+            int k = step * _size + c;
+            if (stamps[k] != stamp) {
+                stamps[k] = stamp;
+                core[k] = engine.scramble(states,
+                        step * engine.stateSize(), c);
+            }
+            return core[k];
+        }
+
+        /** A machine with this worker's rotors. */
+        final Machine machine;
+
+        /** The compiled form of machine for the current search unit. */
+        CompiledMachine engine;
+
+        /** Rotor positions at each keystroke of the crib, as saved by
+         *  engine. */
+        final int[] states;
+
+        /** Rotor core results, indexed by keystroke * size + input. */
+        final int[] core;
+
+        /** The key for which each element of core was computed. */
+        final int[] stamps;
+
+        /** The number of the current key. */
+        int stamp;
+
+        /** Plugboard partners deduced so far. */
+        final int[] plugs;
+
+        /** Working storage for each menu component. */
+        final int[][] stack;
+    }
+
+    /**
+     * Search for keys of the machine configured by ARGS[0] under which
+     * ARGS[1], a crib, encrypts to ARGS[2], printing each candidate as a
+     * setting line on the standard output, and statistics on the
+     * standard error.  ARGS[3], if present, is the offset of the crib in
+     * the message.  The option --rings also searches ring settings.
+     */
+    public static void main(String... args) {
+        try {
+            boolean rings = args.length > 0 && args[0].equals("--rings");
+            int first = rings ? 1 : 0;
+            int count = args.length - first;
+            if (count < 3 || count > 4) {
+                throw error("Usage: java enigma.KeySearch [--rings] CONFIG "
+                        + "CRIB CIPHERTEXT [OFFSET]");
+            }
+            int offset = 0;
+            if (count == 4) {
+                try {
+                    offset = Integer.parseInt(args[first + 3]);
+                } catch (NumberFormatException excp) {
+                    throw error("Invalid crib offset.");
+                }
+            }
+            KeySearch search = new KeySearch(Main.readConfig(args[first]),
+                    args[first + 1], args[first + 2], offset);
+            search.setSearchRings(rings);
+            for (Candidate candidate : search.search()) {
+                System.out.println(candidate);
+            }
+            System.err.printf("%d keys in %.3f s (%.0f keys/s), "
+                    + "%d candidates, %d menu loops%n",
+                    search.keysTested(), search.elapsedNanos() / 1e9,
+                    search.keysPerSecond(), search.candidatesFound(),
+                    search.menuLoops());
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** The alphabet of the machines searched. */
+    private final Alphabet _alphabet;
+
+    /** The size of _alphabet. */
+    private final int _size;
+
+    /** The number of rotor slots of the machines searched. */
+    private final int _numRotors;
+
+    /** The number of pawls of the machines searched. */
+    private final int _numPawls;
+
+    /** The rotors available. */
+    private final List<Rotor> _rotors;
+
+    /** Number of keystrokes before the crib. */
+    private final int _offset;
+
+    /** Length of the crib. */
+    private final int _length;
+
+    /** The crib, as alphabet indices. */
+    private final int[] _crib;
+
+    /** The ciphertext of the crib, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** The rotor orders searched. */
+    private List<String[]> _orders;
+
+    /** The letters linked to each letter by the menu. */
+    private int[][] _links;
+
+    /** The keystroke of the crib making each link in _links. */
+    private int[][] _linkSteps;
+
+    /** The letter from which each menu component is tested, largest
+     *  components first. */
+    private int[] _registers;
+
+    /** Number of independent loops in the menu. */
+    private int _loops;
+
+    /** True if ring settings are searched. */
+    private boolean _searchRings;
+
+    /** Number of combinations of searched ring settings. */
+    private int _ringCombinations;
+
+    /** Number of threads searching. */
+    private int _parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** Maximum number of candidates collected. */
+    private int _maxCandidates = DEFAULT_MAX_CANDIDATES;
+
+    /** The state of each searching thread. */
+    private final ThreadLocal<Worker> _workers =
+            ThreadLocal.withInitial(Worker::new);
+
+    /** Number of keys tested. */
+    private final LongAdder _tested = new LongAdder();
+
+    /** Candidates collected. */
+    private final ConcurrentLinkedQueue<Candidate> _found =
+            new ConcurrentLinkedQueue<>();
+
+    /** Number of candidates found, whether collected or not. */
+    private final AtomicInteger _foundCount = new AtomicInteger();
+
+    /** Duration of the last search in nanoseconds. */
+    private long _elapsed;
+
+    /** Default maximum number of candidates collected. */
+    static final int DEFAULT_MAX_CANDIDATES = 1000;
+}
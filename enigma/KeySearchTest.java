@@ -0,0 +1,101 @@
+package enigma;
+
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author Bradley Tian
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    private static final String CRIB = "WETTERVORHERSAGEBISKAYA";
+
+    /** Return a machine with 4 slots and 3 pawls whose available rotors
+     *  are reflector B and moving rotors I, II and III. */
+    private Machine machine() {
+        return TestUtils.machine(4, 3, "B", "I", "II", "III");
+    }
+
+    /** Return the encryption of CRIB by MACH with rotors II, I, III at
+     *  SETTING. */
+    private String encrypt(Machine mach, String setting) {
+        mach.insertRotors(new String[] { "B", "II", "I", "III" });
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation("(AV) (BS) (CG) (DL) (FU)", AZ));
+        return mach.convert(CRIB);
+    }
+
+    /** Assert that CANDIDATES includes the key with rotors II, I, III at
+     *  SETTING and rings RINGS, with a plugboard consistent with the
+     *  one used by encrypt. */
+    private void assertFound(List<KeySearch.Candidate> candidates,
+                             String setting, String rings) {
+        for (KeySearch.Candidate candidate : candidates) {
+            if (String.join(" ", candidate.rotors()).equals("B II I III")
+                    && candidate.setting().equals(setting)
+                    && candidate.rings().equals(rings)) {
+                for (String pair : new String[] { "AV", "BS", "FU" }) {
+                    assertTrue(candidate.plugboard(),
+                            candidate.plugboard().contains(pair));
+                }
+                return;
+            }
+        }
+        fail("key not found among " + candidates);
+    }
+
+    @Test
+    public void testMenu() {
+        KeySearch search = new KeySearch(machine(), "ABCA", "BCAD");
+        assertEquals(6, search.rotorOrderCount());
+        assertEquals(1, search.menuLoops());
+    }
+
+    @Test
+    public void testSearch() {
+        Machine mach = machine();
+        String cipher = encrypt(mach, "QDX");
+        KeySearch search = new KeySearch(mach, CRIB, cipher);
+        search.setParallelism(2);
+        List<KeySearch.Candidate> found = search.search();
+        assertEquals(6 * 26 * 26 * 26, search.keysTested());
+        assertTrue(found.size() < 20);
+        assertFound(found, "QDX", "AAA");
+    }
+
+    @Test
+    public void testSearchRingsAndOffset() {
+        Machine mach = TestUtils.machine(3, 2, "B", "I", "II");
+        mach.insertRotors(new String[] { "B", "II", "I" });
+        mach.setRotors("MC");
+        mach.setRings("JP");
+        mach.setPlugboard(new Permutation("(AV) (BS) (CG) (DL) (FU)", AZ));
+        mach.seek(17);
+        String cipher = mach.convert(CRIB);
+        KeySearch search = new KeySearch(mach, CRIB, cipher, 17);
+        search.setSearchRings(true);
+        List<KeySearch.Candidate> found = search.search();
+        assertEquals(2L * 26 * 26 * 26, search.keysTested());
+        assertTrue(search.keysPerSecond() > 0);
+        boolean match = false;
+        for (KeySearch.Candidate candidate : found) {
+            Machine check = TestUtils.machine(3, 2, "B", "I", "II");
+            check.insertRotors(candidate.rotors());
+            check.setRotors(candidate.setting());
+            check.setRings(candidate.rings());
+            check.setPlugboard(new Permutation(candidate.plugboard(), AZ));
+            check.seek(17);
+            match |= check.convert(CRIB).equals(cipher);
+        }
+        assertTrue(match);
+    }
+}
@@ -0,0 +1,83 @@
+package enigma;
+
+/**
+ * Converts many independent messages through the same rotors, ring
+ * settings and plugboard, each from its own rotor positions, as a
+ * CompiledMachine set to those positions would.  This base class
+ * converts the messages one after another with copies of the compiled
+ * machine; create returns, when asked and where the platform allows
+ * it, a VectorLaneEngine, which converts a group of messages at once,
+ * one per lane of a vector, performing each table lookup of a keystroke
+ * for all of them with a single gather.  VectorLaneEngine is compiled
+ * only by 'make vector', and is loaded by name, so that the rest of the
+ * package neither needs nor warns of the incubating Vector API.
+ *
+ * @author Bradley Tian
+ */
+class LaneEngine {
+
+    /**
+     * Return an engine converting messages through the tables of
+     * LAYOUT, which it does not modify: a VectorLaneEngine if VECTOR,
+     * LAYOUT is scheduled, the jdk.incubator.vector module is present
+     * and VectorLaneEngine was compiled, and otherwise a LaneEngine.
+     */
+    static LaneEngine create(CompiledMachine layout, boolean vector) {
+        if (vector && layout.scheduled() && VECTOR_API) {
+            try {
+                return Class.forName(VECTOR_ENGINE)
+                        .asSubclass(LaneEngine.class)
+                        .getDeclaredConstructor(CompiledMachine.class)
+                        .newInstance(layout);
+            } catch (ReflectiveOperationException excp) {
+                /* Not compiled: convert one message at a time. */
+            }
+        }
+        return new LaneEngine(layout);
+    }
+
+    /** An engine converting messages through the tables of LAYOUT. */
+    LaneEngine(CompiledMachine layout) {
+        _layout = layout;
+    }
+
+    /** Return the number of messages I convert at once. */
+    int lanes() {
+        return 1;
+    }
+
+    /**
+     * Convert each of MESSAGES, a message as alphabet indices, in place,
+     * the Kth starting from the rotor positions POSITIONS[K], given as
+     * for CompiledMachine.setPositions.  Each result is that of
+     * converting its message from those positions with
+     * CompiledMachine.convert, and so with Machine.convert.
+     */
+    void convert(int[][] messages, int[][] positions) {
+        CompiledMachine engine = _layout.copy();
+        for (int k = 0; k < messages.length; k++) {
+            int[] msg = messages[k];
+            engine.setPositions(positions[k]);
+            for (int t = 0; t < msg.length; t++) {
+                msg[t] = engine.convert(msg[t]);
+            }
+        }
+    }
+
+    /** Return the compiled machine whose tables I use. */
+    CompiledMachine layout() {
+        return _layout;
+    }
+
+    /** The name of the vector engine class. */
+    static final String VECTOR_ENGINE = "enigma.VectorLaneEngine";
+
+    /** True iff the jdk.incubator.vector module was resolved at startup
+     *  (with --add-modules jdk.incubator.vector), so that
+     *  VectorLaneEngine may be loaded. */
+    static final boolean VECTOR_API =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /** The compiled machine whose tables I use. */
+    private final CompiledMachine _layout;
+}
@@ -0,0 +1,130 @@
+package enigma;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the LaneEngine classes.  The
+ *  vector engine is tested only when it has been compiled and the
+ *  tests are run with --add-modules jdk.incubator.vector, as
+ *  'make vector-unit' does.
+ *  @author Bradley Tian
+ */
+public class LaneEngineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** The alphabet of the naval rotors. */
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return a machine with the naval rotors B, Beta, III, IV and I,
+     *  the ring settings BCDE and a plugboard. */
+    private static Machine machine() {
+        Machine machine = TestUtils.machine();
+        machine.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        machine.setRings("BCDE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                AZ));
+        return machine;
+    }
+
+    /**
+     * Assert that ENGINE converts COUNT random messages of up to
+     * MAXLENGTH characters, from random settings of MACHINE, exactly as
+     * MACHINE does.
+     */
+    private static void assertConverts(LaneEngine engine, Machine machine,
+                                       int count, int maxLength) {
+        Random random = new Random(count * 61 + maxLength);
+        int[][] messages = new int[count][];
+        int[][] positions = new int[count][];
+        int[][] expected = new int[count][];
+        for (int k = 0; k < count; k++) {
+            char[] setting = new char[4];
+            for (int i = 0; i < setting.length; i++) {
+                setting[i] = AZ.toChar(random.nextInt(AZ.size()));
+            }
+            machine.setRotors(new String(setting));
+            positions[k] = new int[machine.numRotors()];
+            for (int i = 0; i < positions[k].length; i++) {
+                positions[k][i] = machine.getRotor(i).setting();
+            }
+            messages[k] = new int[random.nextInt(maxLength + 1)];
+            expected[k] = new int[messages[k].length];
+            for (int t = 0; t < messages[k].length; t++) {
+                messages[k][t] = random.nextInt(AZ.size());
+                expected[k][t] = machine.convert(messages[k][t]);
+            }
+        }
+        engine.convert(messages, positions);
+        for (int k = 0; k < count; k++) {
+            assertArrayEquals(expected[k], messages[k]);
+        }
+    }
+
+    @Test
+    public void testScalar() {
+        Machine machine = machine();
+        LaneEngine engine = new LaneEngine(machine.compile().copy());
+        assertEquals(1, engine.lanes());
+        assertConverts(engine, machine, 50, 100);
+    }
+
+    /** Return the vector engine class, or null if it cannot be used:
+     *  if it was not compiled or the Vector API was not added. */
+    private static Class<?> vectorEngine() {
+        if (!LaneEngine.VECTOR_API) {
+            return null;
+        }
+        try {
+            return Class.forName(LaneEngine.VECTOR_ENGINE);
+        } catch (ClassNotFoundException excp) {
+            return null;
+        }
+    }
+
+    @Test
+    public void testCreate() {
+        Machine machine = machine();
+        LaneEngine scalar = LaneEngine.create(machine.compile().copy(),
+                false);
+        assertEquals(LaneEngine.class, scalar.getClass());
+        LaneEngine engine = LaneEngine.create(machine.compile().copy(),
+                true);
+        Class<?> vector = vectorEngine();
+        assertEquals(vector == null ? LaneEngine.class : vector,
+                engine.getClass());
+        assertConverts(engine, machine, 0, 10);
+        assertConverts(engine, machine, 1, 10);
+        assertConverts(engine, machine, engine.lanes(), 700);
+        assertConverts(engine, machine, 3 * engine.lanes() + 5, 200);
+        assertConverts(engine, machine, 40, 0);
+    }
+
+    @Test
+    public void testUnscheduled() throws ReflectiveOperationException {
+        Machine machine = machine();
+        machine.setScheduleLimit(0);
+        CompiledMachine layout = machine.compile().copy();
+        assertFalse(layout.scheduled());
+        LaneEngine engine = LaneEngine.create(layout, true);
+        assertEquals(LaneEngine.class, engine.getClass());
+        assertConverts(engine, machine, 30, 100);
+        Class<?> vector = vectorEngine();
+        if (vector != null) {
+            try {
+                vector.getDeclaredConstructor(CompiledMachine.class)
+                        .newInstance(layout);
+                fail("Unscheduled layout accepted.");
+            } catch (InvocationTargetException excp) {
+                assertEquals("Lane engine requires a scheduled layout.",
+                        excp.getCause().getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Statistics of a language over an alphabet, used to score candidate
+ * decryptions: the index of coincidence, and bigram and trigram
+ * log-likelihoods estimated from a sample text.  Texts are given as
+ * alphabet indices.
+ *
+ * @author Bradley Tian
+ */
+class LanguageModel {
+
+    /**
+     * A model of the language of CORPUS over ALPHABET.  Characters of
+     * CORPUS not in ALPHABET are converted to upper case, and if still
+     * not in ALPHABET, ignored.
+     */
+    LanguageModel(Alphabet alphabet, Reader corpus) {
+        _size = alphabet.size();
+        if ((long) _size * _size > MAX_TABLE) {
+            throw error("Alphabet too large for a language model.");
+        }
+        long[] bigrams = new long[_size * _size];
+        long[] trigrams = null;
+        if ((long) _size * _size * _size <= MAX_TABLE) {
+            trigrams = new long[_size * _size * _size];
+        }
+        long letters = 0;
+        int prev2 = -1;
+        int prev1 = -1;
+        try {
+            for (int ch = corpus.read(); ch != -1; ch = corpus.read()) {
+                int c = alphabet.toInt((char) ch);
+                if (c == -1) {
+                    c = alphabet.toInt(Character.toUpperCase((char) ch));
+                }
+                if (c == -1) {
+                    continue;
+                }
+                letters += 1;
+                if (prev1 != -1) {
+                    bigrams[prev1 * _size + c] += 1;
+                }
+                if (prev2 != -1 && trigrams != null) {
+                    trigrams[(prev2 * _size + prev1) * _size + c] += 1;
+                }
+                prev2 = prev1;
+                prev1 = c;
+            }
+        } catch (IOException excp) {
+            throw error("%s", excp.getMessage());
+        }
+        if (letters < 3) {
+            throw error("Language sample too short.");
+        }
+        _bigrams = logProbabilities(bigrams);
+        _trigrams = trigrams == null ? null : logProbabilities(trigrams);
+    }
+
+    /** Return the natural logarithms of the relative frequencies of
+     *  COUNTS, with unseen entries given a small floor. */
+    private static float[] logProbabilities(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        float[] result = new float[counts.length];
+        double floor = Math.log(FLOOR / total);
+        for (int i = 0; i < counts.length; i++) {
+            result[i] = (float) (counts[i] == 0 ? floor
+                    : Math.log((double) counts[i] / total));
+        }
+        return result;
+    }
+
+    /** Return true iff I have trigram statistics. */
+    boolean hasTrigrams() {
+        return _trigrams != null;
+    }
+
+    /** Return the bigram log-likelihood of the first LENGTH indices of
+     *  TEXT. */
+    double bigramScore(int[] text, int length) {
+        double score = 0;
+        for (int i = 1; i < length; i++) {
+            score += _bigrams[text[i - 1] * _size + text[i]];
+        }
+        return score;
+    }
+
+    /** Return the trigram log-likelihood of the first LENGTH indices of
+     *  TEXT, or its bigram log-likelihood if I have no trigram
+     *  statistics. */
+    double trigramScore(int[] text, int length) {
+        if (_trigrams == null) {
+            return bigramScore(text, length);
+        }
+        double score = 0;
+        for (int i = 2; i < length; i++) {
+            score += _trigrams[(text[i - 2] * _size + text[i - 1]) * _size
+                    + text[i]];
+        }
+        return score;
+    }
+
+    /** Return the log probability of the bigram A B. */
+    double bigram(int a, int b) {
+        return _bigrams[a * _size + b];
+    }
+
+    /** Return the log probability of the trigram A B C, or of the bigram
+     *  B C if I have no trigram statistics. */
+    double trigram(int a, int b, int c) {
+        if (_trigrams == null) {
+            return _bigrams[b * _size + c];
+        }
+        return _trigrams[(a * _size + b) * _size + c];
+    }
+
+    /** Return the index of coincidence of the first LENGTH indices of
+     *  TEXT, which lie in the range 0..SIZE - 1, counting letters in
+     *  COUNTS, which must have at least SIZE elements. */
+    static double indexOfCoincidence(int[] text, int length, int size,
+                                     int[] counts) {
+        for (int c = 0; c < size; c++) {
+            counts[c] = 0;
+        }
+        for (int i = 0; i < length; i++) {
+            counts[text[i]] += 1;
+        }
+        return indexOfCoincidence(counts, size, length);
+    }
+
+    /** Return the index of coincidence of a text of LENGTH letters whose
+     *  first SIZE letter counts are COUNTS. */
+    static double indexOfCoincidence(int[] counts, int size, int length) {
+        if (length < 2) {
+            return 0;
+        }
+        long sum = 0;
+        for (int c = 0; c < size; c++) {
+            sum += (long) counts[c] * (counts[c] - 1);
+        }
+        return (double) sum / ((long) length * (length - 1));
+    }
+
+    /** Largest n-gram table built. */
+    static final long MAX_TABLE = 1 << 24;
+
+    /** Count given to n-grams never seen in the sample. */
+    static final double FLOOR = 0.01;
+
+    /** The size of my alphabet. */
+    private final int _size;
+
+    /** Log probability of each bigram, indexed by first * size + second. */
+    private final float[] _bigrams;
+
+    /** Log probability of each trigram, or null if the alphabet is too
+     *  large. */
+    private final float[] _trigrams;
+}
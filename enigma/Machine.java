@@ -1,7 +1,10 @@
 package enigma;
 
+import java.nio.CharBuffer;
 import java.util.HashMap;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.IntStream;
 
 import static enigma.EnigmaException.*;
 
@@ -40,6 +43,11 @@ class Machine {
         }
         _plugboard = new FixedRotor("Plugboard",
                 new Permutation("", _alphabet));
+        _states = 1;
+        for (int i = 1; i < numRotors && _states > 0; i++) {
+            _states = _states <= Long.MAX_VALUE / _alphabet.size()
+                    ? _states * _alphabet.size() : 0;
+        }
     }
 
     /**
@@ -73,6 +81,13 @@ class Machine {
         return _alphabet;
     }
 
+    /**
+     * Return the rotors available for insertion into my slots.
+     */
+    Collection<Rotor> rotors() {
+        return Collections.unmodifiableCollection(_rotors.values());
+    }
+
     /**
      * Set my rotor slots to the rotors named ROTORS from my set of
      * available rotors (ROTORS[0] names the reflector).
@@ -95,9 +110,8 @@ class Machine {
                     throw error("Reflector is in wrong place.");
                 }
 
-                for (Rotor r : _combination) {
-                    if (r != null
-                            && r.name().equals(_combination[i])) {
+                for (int j = 0; j < i; j++) {
+                    if (rotors[j].equals(rotors[i])) {
                         throw error("Duplicate rotor name.");
                     }
                 }
@@ -134,6 +148,48 @@ class Machine {
         }
     }
 
+    /**
+     * Return the settings of my rotors other than the reflector packed
+     * into a long, as the digits of a base-size number whose last digit
+     * is the setting of the fast rotor.  Two states of the same rotors
+     * are equal iff their settings are.  Requires that packable().
+     */
+    long state() {
+        if (_states == 0) {
+            throw error("Machine state too large to pack.");
+        }
+        long state = 0;
+        for (int i = 1; i < _combination.length; i++) {
+            state = state * _alphabet.size() + _combination[i].setting();
+        }
+        return state;
+    }
+
+    /**
+     * Set my rotors other than the reflector to the settings packed in
+     * STATE, as returned by state().  The rotors and ring settings are
+     * not changed.
+     */
+    void restore(long state) {
+        if (_states == 0) {
+            throw error("Machine state too large to pack.");
+        } else if (state < 0 || state >= _states) {
+            throw error("Invalid machine state.");
+        }
+        for (int i = _combination.length - 1; i > 0; i--) {
+            _combination[i].set((int) (state % _alphabet.size()));
+            state /= _alphabet.size();
+        }
+    }
+
+    /**
+     * Return true iff the settings of my rotors fit in a long, so that
+     * state() and restore() may be used.
+     */
+    boolean packable() {
+        return _states > 0;
+    }
+
     /**
      * Return the current plugboard's permutation.
      */
@@ -170,26 +226,54 @@ class Machine {
      */
     int convert(int c) {
         advanceRotors();
-        if (Main.verbose()) {
-            System.err.printf("[");
-            for (int r = 1; r < numRotors(); r += 1) {
-                System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting()));
-            }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
+        if (_tracer != Tracer.NONE) {
+            return convertTraced(c);
         }
         c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
-        }
         c = applyRotors(c);
+        return plugboard().permute(c);
+    }
+
+    /**
+     * Returns the result of converting the input character C, as
+     * convert does after advancing the rotors, reporting the settings
+     * and signal path to my tracer.
+     */
+    private int convertTraced(int c) {
+        if (_path == null || _path.length != 2 * numRotors() + 2) {
+            _settings = new int[numRotors() - 1];
+            _path = new int[2 * numRotors() + 2];
+        }
+        for (int r = 1; r < numRotors(); r += 1) {
+            _settings[r - 1] = getRotor(r).setting();
+        }
+        int k = 0;
+        _path[k++] = c;
         c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
+        _path[k++] = c;
+        for (int i = _combination.length - 1; i >= 0; i--) {
+            c = _combination[i].convertForward(c);
+            _path[k++] = c;
+        }
+        for (int i = 1; i < _combination.length; i++) {
+            c = _combination[i].convertBackward(c);
+            _path[k++] = c;
         }
+        c = plugboard().permute(c);
+        _path[k++] = c;
+        _tracer.keystroke(_settings, _path);
         return c;
     }
 
+    /**
+     * Report each subsequent keystroke to TRACER, or to no tracer if
+     * TRACER is Tracer.NONE.  While a tracer is set, bulk conversions
+     * step the rotors individually.
+     */
+    void setTracer(Tracer tracer) {
+        _tracer = tracer;
+    }
+
     /**
      * Advance all rotors to their next position.
      */
@@ -230,15 +314,11 @@ class Machine {
      * index in the range 0..alphabet size - 1).
      */
     private int applyRotors(int c) {
-        if (!_alphabet.contains(_alphabet.toChar(c))) {
-            throw error("Improper input.");
-        } else {
-            for (int i = _combination.length - 1; i >= 0; i--) {
-                c = _combination[i].convertForward(c);
-            }
-            for (int i = 1; i < _combination.length; i++) {
-                c = _combination[i].convertBackward(c);
-            }
+        for (int i = _combination.length - 1; i >= 0; i--) {
+            c = _combination[i].convertForward(c);
+        }
+        for (int i = 1; i < _combination.length; i++) {
+            c = _combination[i].convertBackward(c);
         }
         return c;
     }
@@ -248,17 +328,196 @@ class Machine {
      * the rotors accordingly.
      */
     String convert(String msg) throws EnigmaException {
-        String result = "";
         if (msg == null) {
             throw error("Invalid input.");
+        }
+        char[] result = new char[msg.length()];
+        convert(msg, 0, msg.length(), result, 0);
+        return new String(result);
+    }
+
+    /**
+     * Convert the LENGTH characters of SRC starting at SRCPOS into DST
+     * starting at DSTPOS, updating the state of the rotors accordingly.
+     * SRC and DST may be the same array.
+     */
+    void convert(char[] src, int srcPos, char[] dst, int dstPos,
+                 int length) {
+        CompiledMachine engine = engine();
+        if (engine != null && _parallel && length >= PARALLEL_THRESHOLD) {
+            convertParallel(engine, src, srcPos, dst, dstPos, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                dst[dstPos + i] = _alphabet.toChar(convert(engine,
+                        _alphabet.toInt(src[srcPos + i])));
+            }
+        }
+        release(engine);
+    }
+
+    /**
+     * Convert the LENGTH characters of SRC starting at SRCPOS into DST
+     * starting at DSTPOS in chunks, concurrently on the common ForkJoin
+     * pool, leaving ENGINE in the state reached after converting all of
+     * them.  Each chunk starts from a copy of ENGINE sought forward to
+     * the chunk's offset.
+     */
+    private void convertParallel(CompiledMachine engine, char[] src,
+                                 int srcPos, char[] dst, int dstPos,
+                                 int length) {
+        int chunks = (length + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(k -> {
+            int start = k * PARALLEL_CHUNK;
+            int end = Math.min(length, start + PARALLEL_CHUNK);
+            CompiledMachine chunk = engine.copy();
+            chunk.seek(start);
+            for (int i = start; i < end; i++) {
+                dst[dstPos + i] = _alphabet.toChar(chunk.convert(
+                        _alphabet.toInt(src[srcPos + i])));
+            }
+        });
+        engine.seek(length);
+    }
+
+    /**
+     * Set whether long bulk conversions of char arrays are split into
+     * chunks and converted concurrently, according to PARALLEL.  The
+     * results are the same either way.
+     */
+    void setParallel(boolean parallel) {
+        _parallel = parallel;
+    }
+
+    /**
+     * Limit the stepping schedules of my compiled forms to LIMIT table
+     * entries.  A schedule holds one entry per moving rotor, plus one,
+     * for every combination of moving rotor positions; when that would
+     * exceed LIMIT, rotors are stepped by testing their notches.
+     */
+    void setScheduleLimit(int limit) {
+        if (limit < 0) {
+            throw error("Schedule limit must not be negative.");
+        }
+        _scheduleLimit = limit;
+        _compiled = null;
+    }
+
+    /** Return the maximum number of entries in a stepping schedule. */
+    int scheduleLimit() {
+        return _scheduleLimit;
+    }
+
+    /**
+     * Keep the rotor core permutations of up to SIZE recently reached
+     * combinations of rotor positions in my compiled forms, or none if
+     * SIZE is 0.  This pays when the same positions recur, as when many
+     * messages are converted from the same setting.
+     */
+    void setCoreCacheSize(int size) {
+        if (size < 0) {
+            throw error("Core cache size must not be negative.");
+        }
+        _coreCacheSize = size;
+        _compiled = null;
+    }
+
+    /** Return the number of rotor core permutations cached. */
+    int coreCacheSize() {
+        return _coreCacheSize;
+    }
+
+    /**
+     * Advance my rotors to the positions they would reach after
+     * converting N more characters, without converting anything.  This
+     * takes time bounded by the period of the rotor stepping sequence,
+     * however large N is.
+     */
+    void seek(long n) {
+        if (n < 0) {
+            throw error("Seek offset must not be negative.");
+        }
+        CompiledMachine engine = compile();
+        engine.seek(n);
+        engine.store(this);
+    }
+
+    /**
+     * Convert the characters of SRC from START (inclusive) to END
+     * (exclusive) into DST starting at DSTPOS, updating the state of the
+     * rotors accordingly.
+     */
+    void convert(CharSequence src, int start, int end, char[] dst,
+                 int dstPos) {
+        CompiledMachine engine = engine();
+        for (int i = start; i < end; i++) {
+            dst[dstPos + i - start] = _alphabet.toChar(convert(engine,
+                    _alphabet.toInt(src.charAt(i))));
+        }
+        release(engine);
+    }
+
+    /**
+     * Convert the remaining characters of SRC into DST, advancing the
+     * positions of both buffers and updating the state of the rotors
+     * accordingly.  DST must have room for all of SRC.
+     */
+    void convert(CharBuffer src, CharBuffer dst) {
+        int length = src.remaining();
+        if (dst.remaining() < length) {
+            throw error("Output buffer too small.");
+        }
+        if (src.hasArray() && dst.hasArray()) {
+            convert(src.array(), src.arrayOffset() + src.position(),
+                    dst.array(), dst.arrayOffset() + dst.position(), length);
+            src.position(src.position() + length);
+            dst.position(dst.position() + length);
         } else {
-            for (int i = 0; i < msg.length(); i++) {
-                result += _alphabet.toChar(convert(
-                        _alphabet.toInt(msg.charAt(i))));
+            CompiledMachine engine = engine();
+            for (int i = 0; i < length; i++) {
+                dst.put(_alphabet.toChar(convert(engine,
+                        _alphabet.toInt(src.get()))));
             }
+            release(engine);
+        }
+    }
+
+    /**
+     * Return the engine to be used for a bulk conversion: a compiled
+     * machine, or null when tracing requires the rotors to be stepped
+     * individually.
+     */
+    CompiledMachine engine() {
+        return _tracer != Tracer.NONE ? null : compile();
+    }
+
+    /** Return the conversion of C through ENGINE, or through my rotors
+     *  if ENGINE is null. */
+    private int convert(CompiledMachine engine, int c) {
+        return engine == null ? convert(c) : engine.convert(c);
+    }
+
+    /** Copy the rotor positions reached by ENGINE, if any, back into
+     *  my rotors at the end of a bulk conversion. */
+    void release(CompiledMachine engine) {
+        if (engine != null) {
+            engine.store(this);
+        }
+    }
+
+    /**
+     * Return a CompiledMachine equivalent to my current rotors, rings,
+     * plugboard and positions, reusing the last one compiled when only
+     * the positions have changed since.
+     */
+    CompiledMachine compile() {
+        if (_compiled == null || !_compiled.matches(this)) {
+            _compiled = new CompiledMachine(this);
+        } else {
+            _compiled.load(this);
         }
-        return result;
+        return _compiled;
     }
+
     /** The alphabet used in this machine. */
     private final Alphabet _alphabet;
 
@@ -273,4 +532,40 @@ class Machine {
 
     /** The plugboard representation of this machine. */
     private FixedRotor _plugboard;
+
+    /** Number of distinct values of state(), or 0 if they do not fit in
+     *  a long. */
+    private long _states;
+
+    /** The most recently compiled form of this machine, or null. */
+    private CompiledMachine _compiled;
+
+    /** Receives each keystroke converted by my rotors. */
+    private Tracer _tracer = Tracer.NONE;
+
+    /** Rotor settings reported to _tracer, or null. */
+    private int[] _settings;
+
+    /** Signal path reported to _tracer, or null. */
+    private int[] _path;
+
+    /** True if long bulk conversions are done concurrently. */
+    private boolean _parallel;
+
+    /** Maximum number of entries in a stepping schedule. */
+    private int _scheduleLimit = SCHEDULE_LIMIT;
+
+    /** Number of rotor core permutations cached by my compiled forms. */
+    private int _coreCacheSize;
+
+    /** Default maximum number of entries in a stepping schedule, enough
+     *  for three moving rotors on alphabets of up to 64 characters. */
+    static final int SCHEDULE_LIMIT = 1 << 20;
+
+    /** Conversions shorter than this are never done concurrently. */
+    static final int PARALLEL_THRESHOLD = 1 << 18;
+
+    /** Number of characters converted by each task of a concurrent
+     *  conversion. */
+    static final int PARALLEL_CHUNK = 1 << 16;
 }
@@ -0,0 +1,303 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * An immutable description of an Enigma configuration (its alphabet,
+ * slots, pawls and the wirings and notches of its available rotors)
+ * from which any number of threads may create Cursors, each an
+ * independent machine set up by a setting line.  A cursor carries only
+ * its rotor positions; the compiled wiring tables are shared by every
+ * cursor with the same rotors, ring settings and plugboard, and are
+ * built at most once for each, so creating a cursor for a key already
+ * seen takes no lock and converting with it takes none at all.
+ *
+ * @author Bradley Tian
+ */
+class MachineTemplate {
+
+    /**
+     * A template for the configuration of MACHINE: its alphabet, number
+     * of slots and pawls, available rotors, and compilation options.
+     * Later changes to MACHINE do not affect the template.
+     */
+    MachineTemplate(Machine machine) {
+        _alphabet = machine.alphabet();
+        _numRotors = machine.numRotors();
+        _numPawls = machine.numPawls();
+        _scheduleLimit = machine.scheduleLimit();
+        _coreCacheSize = machine.coreCacheSize();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor rotor : machine.rotors()) {
+            rotors.add(rotor.copy());
+        }
+        _rotors = Collections.unmodifiableList(rotors);
+        _noPlugboard = new Permutation("", _alphabet);
+        _workbench = machine();
+    }
+
+    /**
+     * Return a new machine with my configuration and copies of my
+     * rotors, with no rotors inserted and no plugboard, for use by one
+     * thread.
+     */
+    Machine machine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor rotor : _rotors) {
+            rotors.add(rotor.copy());
+        }
+        Machine machine = new Machine(_alphabet, _numRotors, _numPawls,
+                rotors);
+        machine.setScheduleLimit(_scheduleLimit);
+        machine.setCoreCacheSize(_coreCacheSize);
+        return machine;
+    }
+
+    /** Return the permutation of an empty plugboard over my alphabet. */
+    Permutation noPlugboard() {
+        return _noPlugboard;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /**
+     * Return a new cursor set up according to SETTINGS, a setting line
+     * in the format specified in the assignment, with no plugboard
+     * unless SETTINGS gives one.  Errors in SETTINGS are reported as
+     * they would be by Main.
+     */
+    Cursor cursor(String settings) {
+        return cursor(settings, null);
+    }
+
+    /**
+     * Return a new cursor set up according to SETTINGS, as by
+     * cursor(SETTINGS), but with the plugboard of PREVIOUS, if not null,
+     * when SETTINGS gives none, just as a Machine keeps its plugboard
+     * from one setting line to the next.
+     */
+    Cursor cursor(String settings, Cursor previous) {
+        String[] tokens = settings.trim().split("\\s+");
+        String plugboard = plugboard(tokens);
+        if (plugboard.isEmpty() && previous != null
+                && !previous._plugboard.isEmpty()) {
+            plugboard = previous._plugboard;
+            settings = settings + " " + plugboard;
+            tokens = settings.trim().split("\\s+");
+        }
+        String key = layoutKey(tokens);
+        Layout layout = _layouts.get(key);
+        if (layout == null) {
+            layout = build(settings, tokens);
+            if (_layouts.size() >= MAX_LAYOUTS) {
+                _layouts.clear();
+            }
+            _layouts.putIfAbsent(key, layout);
+        }
+        CompiledMachine engine = layout.engine.copy();
+        engine.setPositions(positions(tokens[_numRotors + 1],
+                layout.rings));
+        return new Cursor(_alphabet, engine, plugboard);
+    }
+
+    /** Return the number of distinct rotor, ring and plugboard
+     *  combinations whose tables are currently held. */
+    int layouts() {
+        return _layouts.size();
+    }
+
+    /**
+     * Return the shared tables for the setting line SETTINGS, split
+     * into TOKENS, set up on my private machine, which only one thread
+     * may use at a time.
+     */
+    private synchronized Layout build(String settings, String[] tokens) {
+        _workbench.setPlugboard(_noPlugboard);
+        MessageProcessor.setUp(_workbench, settings);
+        int[] rings = new int[_numRotors];
+        int next = _numRotors + 2;
+        if (next < tokens.length && tokens[next].matches("[\\w]+")) {
+            for (int i = 1; i < _numRotors; i++) {
+                rings[i] = _alphabet.toInt(tokens[next].charAt(i - 1));
+            }
+        }
+        return new Layout(_workbench.compile().copy(), rings);
+    }
+
+    /** Return the plugboard cycles of the setting line split into
+     *  TOKENS, or "" if it has none. */
+    private String plugboard(String[] tokens) {
+        StringBuilder cycles = new StringBuilder();
+        for (int i = _numRotors + 2; i < tokens.length; i++) {
+            if (cycles.length() > 0 || tokens[i].startsWith("(")) {
+                cycles.append(cycles.length() == 0 ? "" : " ")
+                        .append(tokens[i]);
+            }
+        }
+        return cycles.toString();
+    }
+
+    /** Return the key identifying the rotors, ring settings and
+     *  plugboard of the setting line split into TOKENS: all tokens but
+     *  the rotor settings. */
+    private String layoutKey(String[] tokens) {
+        if (tokens.length < _numRotors + 2) {
+            throw error("Input setting truncated.");
+        }
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < tokens.length; i++) {
+            if (i != _numRotors + 1) {
+                key.append(tokens[i]).append(' ');
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Return the position of the rotor in each slot for rotor settings
+     * SETTING and ring settings RINGS, checking SETTING as
+     * Machine.setRotors does.
+     */
+    private int[] positions(String setting, int[] rings) {
+        if (setting.length() < _numRotors - 1) {
+            throw error("Wheel settings too short.");
+        } else if (setting.length() > _numRotors - 1) {
+            throw error("Wheel settings too long.");
+        }
+        int[] positions = new int[_numRotors];
+        for (int i = 1; i < _numRotors; i++) {
+            int posn = _alphabet.toInt(setting.charAt(i - 1));
+            if (posn == -1) {
+                throw error("Alphabet does not contain setting element.");
+            }
+            positions[i] = Math.floorMod(posn - rings[i], _alphabet.size());
+        }
+        return positions;
+    }
+
+    /**
+     * An independent machine created from a template, holding only its
+     * own rotor positions.  A cursor may be used by one thread at a
+     * time; distinct cursors may be used concurrently.
+     */
+    static class Cursor {
+
+        /** A cursor over ALPHABET converting through ENGINE, with the
+         *  plugboard given by the cycles PLUGBOARD. */
+        Cursor(Alphabet alphabet, CompiledMachine engine, String plugboard) {
+            _alphabet = alphabet;
+            _engine = engine;
+            _plugboard = plugboard;
+        }
+
+        /** Return the result of converting the index C, after advancing
+         *  the rotors, as Machine.convert does. */
+        int convert(int c) {
+            return _engine.convert(c);
+        }
+
+        /** Return the encoding/decoding of MSG, advancing the rotors
+         *  accordingly. */
+        String convert(String msg) {
+            if (msg == null) {
+                throw error("Invalid input.");
+            }
+            char[] result = msg.toCharArray();
+            convert(result, 0, result, 0, result.length);
+            return new String(result);
+        }
+
+        /**
+         * Convert the LENGTH characters of SRC starting at SRCPOS into
+         * DST starting at DSTPOS, advancing the rotors accordingly.  SRC
+         * and DST may be the same array.
+         */
+        void convert(char[] src, int srcPos, char[] dst, int dstPos,
+                     int length) {
+            for (int i = 0; i < length; i++) {
+                dst[dstPos + i] = _alphabet.toChar(_engine.convert(
+                        _alphabet.toInt(src[srcPos + i])));
+            }
+        }
+
+        /** Return my alphabet. */
+        Alphabet alphabet() {
+            return _alphabet;
+        }
+
+        /** Return my rotor positions and the tables they index. */
+        CompiledMachine engine() {
+            return _engine;
+        }
+
+        /** My alphabet. */
+        private final Alphabet _alphabet;
+
+        /** My rotor positions, and the shared tables they index. */
+        private final CompiledMachine _engine;
+
+        /** The cycles of my plugboard, as given in my setting line. */
+        private final String _plugboard;
+    }
+
+    /** The compiled tables shared by cursors with the same rotors, ring
+     *  settings and plugboard. */
+    private static class Layout {
+
+        /** A layout of ENGINE, whose slots have ring settings RINGS. */
+        Layout(CompiledMachine engine, int[] rings) {
+            this.engine = engine;
+            this.rings = rings;
+        }
+
+        /** A compiled machine whose copies become cursors. */
+        final CompiledMachine engine;
+
+        /** The ring setting of each slot, 0 for the reflector. */
+        final int[] rings;
+    }
+
+    /** Most layouts held at once; beyond this they are discarded. */
+    static final int MAX_LAYOUTS = 1024;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** My number of rotor slots. */
+    private final int _numRotors;
+
+    /** My number of pawls. */
+    private final int _numPawls;
+
+    /** The schedule limit of my machines. */
+    private final int _scheduleLimit;
+
+    /** The core cache size of my machines. */
+    private final int _coreCacheSize;
+
+    /** My available rotors, never inserted into a machine. */
+    private final List<Rotor> _rotors;
+
+    /** A machine with copies of my rotors, used only by build. */
+    private final Machine _workbench;
+
+    /** The empty plugboard. */
+    private final Permutation _noPlugboard;
+
+    /** Layouts by layoutKey. */
+    private final ConcurrentHashMap<String, Layout> _layouts =
+            new ConcurrentHashMap<>();
+}
@@ -1,6 +1,22 @@
 package enigma;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Random;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -62,6 +78,26 @@ public class MachineTest {
         assertEquals(ROTORS.get("I"), mach.getRotor(4));
     }
 
+    @Test
+    public void testDuplicateRotors() {
+        String[][] settings = {
+            { "B", "Beta", "III", "III", "I" },
+            { "B", "Beta", "I", "I", "I" },
+            { "B", "Beta", "III", "IV", "III" },
+        };
+        for (String[] setting : settings) {
+            Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
+            try {
+                mach.insertRotors(setting);
+                fail("Repeated rotor accepted.");
+            } catch (EnigmaException excp) {
+                assertEquals("Duplicate rotor name.", excp.getMessage());
+            }
+        }
+        assertEquals("Error: Duplicate rotor name.", charsProcessed(
+                "* B Beta III III I AXLE\nHELLO\n"));
+    }
+
     @Test
     public void testConvertChar() {
         Machine mach = mach1();
@@ -76,4 +112,646 @@ public class MachineTest {
         assertEquals("QVPQSOKOILPUBKJZPISFXDW",
                 mach.convert("FROMHISSHOULDERHIAWATHA"));
     }
+
+    @Test
+    public void testConvertBulk() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        char[] src = "..FROMHISSHOULDER".toCharArray();
+        char[] dst = new char[20];
+        mach.convert(src, 2, dst, 1, 15);
+        assertEquals("QVPQSOKOILPUBKJ", new String(dst, 1, 15));
+        mach.convert("..HIAW", 2, 6, dst, 0);
+        assertEquals("ZPIS", new String(dst, 0, 4));
+        CharBuffer in = CharBuffer.wrap("ATHA").asReadOnlyBuffer();
+        CharBuffer out = CharBuffer.allocate(4);
+        mach.convert(in, out);
+        assertEquals(0, in.remaining());
+        assertEquals("FXDW", new String(out.array()));
+    }
+
+    /** Return the result of setting up a machine with SETTINGS and
+     *  converting a message, or the error message if there is one. */
+    private String setUpAndConvert(String settings) {
+        Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
+        try {
+            MessageProcessor.setUp(mach, settings);
+            return mach.convert("FROMHISSHOULDERHIAWATHA");
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+    }
+
+    @Test
+    public void testSetUp() {
+        String expected = setUpAndConvert("* B Beta III IV I AXLE (HQ) (EX)");
+        assertEquals(expected,
+                setUpAndConvert("\t*  B\u000BBeta III IV I\fAXLE (HQ)(EX) "));
+        assertEquals(expected,
+                setUpAndConvert("* B Beta III IV I AXLE (HQ) (EX)\r"));
+        assertEquals(setUpAndConvert("* B Beta III IV I AXLE AAAA (HQ)"),
+                setUpAndConvert("* B Beta III IV I AXLE (HQ) x"));
+        assertEquals("Input setting truncated.",
+                setUpAndConvert("* B Beta III IV I"));
+        assertEquals("Malformed start of input setting.",
+                setUpAndConvert("*B Beta III IV I AXLE"));
+        assertEquals("Empty cycle in config.",
+                setUpAndConvert("* B Beta III IV I AXLE ()"));
+        assertEquals("Invalid cycle config.",
+                setUpAndConvert("* B Beta III IV I AXLE (AB) x (CD)"));
+        assertEquals("(AB) (CD) ", Main.parseCycles(" (AB) (CD) x", AZ));
+        assertEquals("", Main.parseCycles(") (", AZ));
+    }
+
+    /** Assert that MACH converts LENGTH pseudo-random characters exactly
+     *  as its compiled form does, starting from the same settings,
+     *  which SETUP restores. */
+    private void checkCompiled(Machine mach, Runnable setup, int length) {
+        Random random = new Random(61);
+        int[] input = new int[length];
+        for (int i = 0; i < length; i++) {
+            input[i] = random.nextInt(mach.alphabet().size());
+        }
+        setup.run();
+        int[] expected = new int[length];
+        for (int i = 0; i < length; i++) {
+            expected[i] = mach.convert(input[i]);
+        }
+        setup.run();
+        CompiledMachine compiled = mach.compile();
+        for (int i = 0; i < length; i++) {
+            assertEquals("keystroke " + i, expected[i],
+                    compiled.convert(input[i]));
+        }
+    }
+
+    @Test
+    public void testCompiledMatchesMachine() {
+        Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
+        checkCompiled(mach, () -> {
+            mach.insertRotors(ROTORS1);
+            mach.setRotors("AXDQ");
+            mach.setRings("BCDE");
+            mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR)", AZ));
+        }, 20000);
+    }
+
+    @Test
+    public void testSchedule() {
+        Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
+        Runnable setup = () -> {
+            mach.insertRotors(ROTORS1);
+            mach.setRotors("ZEUQ");
+            mach.setRings("QRST");
+        };
+        setup.run();
+        assertTrue(mach.compile().scheduled());
+        checkCompiled(mach, setup, 40000);
+        mach.setScheduleLimit(26 * 26 * 26 * 4 - 1);
+        setup.run();
+        assertFalse(mach.compile().scheduled());
+        checkCompiled(mach, setup, 40000);
+    }
+
+    @Test
+    public void testCompiledRings() {
+        Random random = new Random(43);
+        char[] msg = new char[2000];
+        for (int i = 0; i < msg.length; i++) {
+            msg[i] = AZ.toChar(random.nextInt(AZ.size()));
+        }
+        String message = new String(msg);
+        for (int limit : new int[] { 0, Machine.SCHEDULE_LIMIT }) {
+            for (String rings : new String[] { "AAAA", "CDEF", "ZQVJ" }) {
+                Machine mach = mach1();
+                mach.setRings(rings);
+                int[] positions = new int[mach.numRotors()];
+                for (int i = 0; i < positions.length; i++) {
+                    positions[i] = mach.getRotor(i).setting();
+                }
+                String expected = mach.convert(message);
+
+                Machine plain = mach1();
+                plain.setScheduleLimit(limit);
+                CompiledMachine engine = plain.compile();
+                int[] ringIndices = new int[plain.numRotors()];
+                for (int i = 1; i < ringIndices.length; i++) {
+                    ringIndices[i] = AZ.toInt(rings.charAt(i - 1));
+                }
+                engine.setRings(ringIndices);
+                engine.setPositions(positions);
+                char[] converted = new char[msg.length];
+                for (int i = 0; i < msg.length; i++) {
+                    converted[i] = AZ.toChar(engine.convert(
+                            AZ.toInt(msg[i])));
+                }
+                assertEquals(expected, new String(converted));
+                assertNotSame(engine, plain.compile());
+            }
+        }
+    }
+
+    @Test
+    public void testCoreCache() {
+        Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
+        Permutation plugboard = new Permutation("(HQ) (EX) (IP) (TR)", AZ);
+        Runnable setup = () -> {
+            mach.insertRotors(ROTORS1);
+            mach.setRotors("ZEUQ");
+            mach.setRings("QRST");
+            mach.setPlugboard(plugboard);
+        };
+        mach.setCoreCacheSize(1 << 16);
+        setup.run();
+        CoreCache cores = mach.compile().cores();
+        assertEquals(1 << 16, cores.capacity());
+        checkCompiled(mach, setup, 20000);
+        assertEquals(20000, cores.hits() + cores.misses());
+        long hits = cores.hits();
+        checkCompiled(mach, setup, 20000);
+        assertEquals(40000, cores.hits() + cores.misses());
+        assertTrue(cores.hits() - hits > 15000);
+        assertEquals(0, mach.compile().copy().cores().misses());
+
+        mach.setCoreCacheSize(3);
+        setup.run();
+        assertEquals(4, mach.compile().cores().capacity());
+        checkCompiled(mach, setup, 20000);
+        mach.setScheduleLimit(0);
+        setup.run();
+        assertFalse(mach.compile().scheduled());
+        checkCompiled(mach, setup, 20000);
+        checkCompiled(mach, setup, 20000);
+
+        mach.setCoreCacheSize(0);
+        setup.run();
+        assertNull(mach.compile().cores());
+    }
+
+    @Test
+    public void testTemplate() throws InterruptedException {
+        Machine source = new Machine(AZ, 5, 3, ROTORS.values());
+        MachineTemplate template = new MachineTemplate(source);
+        String msg = TestUtils.UPPER_STRING.repeat(40);
+        String[] settings = {
+            "* B Beta III IV I AXLE",
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "* B Beta III IV I QEZU BCDE (HQ) (EX)",
+            "* B Beta I III IV ZZZZ",
+        };
+        for (String setting : settings) {
+            Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
+            MessageProcessor.setUp(mach, setting);
+            assertEquals(setting, mach.convert(msg),
+                    template.cursor(setting).convert(msg));
+        }
+        assertEquals(4, template.layouts());
+        MachineTemplate.Cursor cursor = template.cursor(settings[0]);
+        assertEquals(4, template.layouts());
+        assertEquals(template.cursor(settings[0]).convert(msg),
+                cursor.convert(msg));
+
+        try {
+            template.cursor("* B Beta III IV I AXL");
+            fail("short setting accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("Wheel settings too short.", excp.getMessage());
+        }
+
+        Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
+        MessageProcessor.setUp(mach, settings[2]);
+        String expected = mach.convert(msg);
+        String[] results = new String[8];
+        Thread[] threads = new Thread[results.length];
+        for (int t = 0; t < threads.length; t++) {
+            int k = t;
+            threads[t] = new Thread(() -> {
+                MachineTemplate.Cursor mine = template.cursor(settings[2]);
+                StringBuilder result = new StringBuilder();
+                for (int i = 0; i < msg.length(); i++) {
+                    result.append(mine.convert(msg.substring(i, i + 1)));
+                }
+                results[k] = result.toString();
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+            assertEquals(expected, results[t]);
+        }
+    }
+
+    @Test
+    public void testTemplateDuplicateRotors() {
+        MachineTemplate template = new MachineTemplate(
+                new Machine(AZ, 5, 3, ROTORS.values()));
+        for (String setting : new String[] { "* B Beta III III I AXLE",
+                                             "* B Beta I I I QQQQ" }) {
+            String input = setting + "\nHELLO\n";
+            StringWriter output = new StringWriter();
+            String actual;
+            try {
+                new CharMessageProcessor(template, new StringReader(input),
+                        output).process();
+                actual = output.toString();
+            } catch (EnigmaException excp) {
+                actual = "Error: " + excp.getMessage();
+            }
+            assertEquals(charsProcessed(input), actual);
+            assertEquals("Error: Duplicate rotor name.", actual);
+        }
+        assertEquals(0, template.layouts());
+    }
+
+    @Test
+    public void testCompiledLargeAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = '\u0100'; c < '\u0100' + 300; c++) {
+            chars.append(c);
+        }
+        Alphabet alpha = new Alphabet(chars.toString());
+        Random random = new Random(1);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = { "R", "F", "M1", "M2", "M3" };
+        for (String name : names) {
+            ArrayList<Character> order = new ArrayList<>();
+            for (int i = 0; i < alpha.size(); i++) {
+                order.add(alpha.toChar(i));
+            }
+            Collections.shuffle(order, random);
+            StringBuilder cycles = new StringBuilder();
+            for (int i = 0; i + 1 < order.size(); i += 2) {
+                cycles.append('(').append(order.get(i))
+                        .append(order.get(i + 1)).append(')');
+            }
+            Permutation perm = new Permutation(cycles.toString(), alpha);
+            if (name.equals("R")) {
+                rotors.add(new Reflector(name, perm));
+            } else if (name.equals("F")) {
+                rotors.add(new FixedRotor(name, perm));
+            } else {
+                rotors.add(new MovingRotor(name, perm,
+                        "" + alpha.toChar(random.nextInt(alpha.size()))));
+            }
+        }
+        Machine mach = new Machine(alpha, 5, 3, rotors);
+        checkCompiled(mach, () -> {
+            mach.insertRotors(names);
+            mach.setRotors(chars.substring(290, 294));
+        }, 100000);
+    }
+
+    @Test
+    public void testConvertParallel() {
+        Random random = new Random(17);
+        char[] msg = new char[3 * Machine.PARALLEL_THRESHOLD + 12345];
+        for (int i = 0; i < msg.length; i++) {
+            msg[i] = AZ.toChar(random.nextInt(AZ.size()));
+        }
+        Machine mach = mach1();
+        mach.setRings("CDEF");
+        char[] expected = new char[msg.length];
+        mach.convert(msg, 0, expected, 0, msg.length);
+        String after = mach.convert("AFTERWARDS");
+
+        mach = mach1();
+        mach.setRings("CDEF");
+        mach.setParallel(true);
+        char[] result = new char[msg.length];
+        mach.convert(msg, 0, result, 0, msg.length);
+        assertArrayEquals(expected, result);
+        assertEquals(after, mach.convert("AFTERWARDS"));
+    }
+
+    @Test
+    public void testTracer() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        ArrayList<String> trace = new ArrayList<>();
+        mach.setTracer((settings, path) -> {
+            String line = "";
+            for (int s : settings) {
+                line += AZ.toChar(s);
+            }
+            for (int c : path) {
+                line += " " + AZ.toChar(c);
+            }
+            trace.add(line);
+        });
+        assertEquals("QVPQ", mach.convert("FROM"));
+        assertEquals(4, trace.size());
+        assertEquals("AXLF F F I V J W H X Z J H Q", trace.get(0));
+        mach.setTracer(Tracer.NONE);
+        assertEquals("SOKOILPUBKJZPISFXDW",
+                mach.convert("HISSHOULDERHIAWATHA"));
+        assertEquals(4, trace.size());
+    }
+
+    @Test
+    public void testTraceWriter() {
+        StringWriter out = new StringWriter();
+        TraceWriter writer = new TraceWriter(AZ, out);
+        int[] path = new int[12];
+        for (int i = 0; i < TraceWriter.BATCH_SIZE; i++) {
+            path[0] = i % AZ.size();
+            writer.keystroke(new int[] { 0, 23, 11, 4 }, path);
+        }
+        writer.close();
+        String[] lines = out.toString().split(TraceWriter.LINE_SEPARATOR);
+        assertEquals(TraceWriter.BATCH_SIZE, lines.length);
+        assertEquals("[AXLE] B -> A -> A -> A -> A -> A -> A -> A -> A"
+                + " -> A -> A -> A", lines[1]);
+
+        TraceWriter failing = new TraceWriter(AZ, new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                throw new IllegalStateException("broken");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        for (int i = 0; i < 4 * TraceWriter.BATCH_SIZE; i++) {
+            failing.keystroke(new int[] { 0, 23, 11, 4 }, path);
+        }
+        try {
+            failing.close();
+            fail("Trace failure not reported.");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().startsWith("trace failed: "));
+        }
+    }
+
+    @Test
+    public void testTraceParenthesis() {
+        String message = "(HELLO)".repeat(3000);
+        Machine mach = mach1();
+        StringWriter trace = new StringWriter();
+        TraceWriter writer = new TraceWriter(AZ, trace);
+        mach.setTracer(writer);
+        StringWriter out = new StringWriter();
+        new CharMessageProcessor(mach,
+                new StringReader("* B Beta III IV I AXLE\n" + message),
+                out).process();
+        writer.close();
+        String[] lines = trace.toString().split(TraceWriter.LINE_SEPARATOR);
+        assertEquals(message.length(), lines.length);
+        assertTrue(lines[0].startsWith("[AXLF] Z -> "));
+        assertTrue(lines[1].startsWith("[AXLG] H -> "));
+
+        Machine plain = mach1();
+        StringWriter expected = new StringWriter();
+        new CharMessageProcessor(plain,
+                new StringReader("* B Beta III IV I AXLE\n" + message),
+                expected).process();
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    /** Return the rotor settings of MACH as a string. */
+    private String settings(Machine mach) {
+        String result = "";
+        for (int i = 1; i < mach.numRotors(); i++) {
+            result += AZ.toChar(mach.getRotor(i).setting());
+        }
+        return result;
+    }
+
+    @Test
+    public void testSeek() {
+        Random random = new Random(29);
+        char[] msg = new char[40000];
+        for (int i = 0; i < msg.length; i++) {
+            msg[i] = AZ.toChar(random.nextInt(AZ.size()));
+        }
+        for (int n : new int[] { 0, 1, 26, 650, 16900, 17577, 40000 }) {
+            Machine stepped = mach1();
+            stepped.setRings("CDEF");
+            stepped.convert(msg, 0, new char[n], 0, n);
+            String expected = settings(stepped)
+                    + stepped.convert("ATTACKATDAWN");
+            Machine sought = mach1();
+            sought.setRings("CDEF");
+            sought.seek(n);
+            assertEquals(expected,
+                    settings(sought) + sought.convert("ATTACKATDAWN"));
+        }
+
+        Machine far = mach1();
+        far.seek(1_000_000_000_000L);
+        far.seek(123456);
+        String expected = settings(far);
+        Machine near = mach1();
+        near.seek(1_000_000_123_456L);
+        assertEquals(expected, settings(near));
+    }
+
+    @Test
+    public void testState() {
+        Machine mach = mach1();
+        assertTrue(mach.packable());
+        assertEquals(((0 * 26 + 23) * 26 + 11) * 26 + 4, mach.state());
+        mach.setRings("CDEF");
+        long start = mach.state();
+        String settings = settings(mach);
+        String expected = mach.convert("ATTACKATDAWNFROMTHEEAST");
+        long end = mach.state();
+        mach.restore(start);
+        assertEquals(settings, settings(mach));
+        assertEquals(expected, mach.convert("ATTACKATDAWNFROMTHEEAST"));
+        assertEquals(end, mach.state());
+
+        Machine fixed = mach1();
+        fixed.setRotors("FXLE");
+        long fixedStart = fixed.state();
+        assertEquals(((5 * 26 + 23) * 26 + 11) * 26 + 4, fixedStart);
+        String fixedExpected = fixed.convert("ATTACKATDAWN");
+        fixed.setRotors("AAAA");
+        fixed.restore(fixedStart);
+        assertEquals("FXLE", settings(fixed));
+        assertEquals(fixedStart, fixed.state());
+        assertEquals(fixedExpected, fixed.convert("ATTACKATDAWN"));
+
+        Random random = new Random(37);
+        char[] msg = new char[20000];
+        for (int i = 0; i < msg.length; i++) {
+            msg[i] = AZ.toChar(random.nextInt(AZ.size()));
+        }
+        Machine stepped = mach1();
+        stepped.setRotors("QXLE");
+        for (int i = 0; i < msg.length; i += 1000) {
+            long state = stepped.state();
+            String part = stepped.convert(new String(msg, i, 1000));
+            long next = stepped.state();
+            stepped.restore(state);
+            assertEquals(part, stepped.convert(new String(msg, i, 1000)));
+            assertEquals(next, stepped.state());
+        }
+
+        for (long bad : new long[] { -1, 26L * 26 * 26 * 26 }) {
+            try {
+                mach.restore(bad);
+                fail("Invalid state accepted.");
+            } catch (EnigmaException excp) {
+                assertEquals("Invalid machine state.", excp.getMessage());
+            }
+        }
+        Alphabet wide = new Alphabet(TestUtils.UPPER_STRING
+                + "abcdefghijklmnopqrstuvwxyz0123456789");
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation("", wide)));
+        Machine big = new Machine(wide, 12, 0, rotors);
+        assertFalse(big.packable());
+    }
+
+    /** Return what PROCESSOR wrote to OUTPUT, or the message of the
+     *  error it reported. */
+    private String processed(MessageProcessor processor,
+                             ByteArrayOutputStream output) {
+        try {
+            processor.process();
+            return output.toString();
+        } catch (EnigmaException excp) {
+            return "Error: " + excp.getMessage();
+        }
+    }
+
+    /** Return inputs on which the processors of ASCII input must agree
+     *  with CharMessageProcessor. */
+    private static String[] asciiInputs() {
+        String nl = System.lineSeparator();
+        return new String[] {
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)" + nl
+                + "FROM his shoulder Hiawatha" + nl + nl
+                + "Took the camera of rosewood" + nl,
+            "* B Beta III IV I AXLE\r\nHELLO WORLD\r\n\r\n"
+                + "* B Beta I II III ZZZZ BCDE (AB)\r\nHELLO WORLD",
+            "  " + nl + "* B Beta III IV I AXLE" + nl + "   " + nl
+                + "A".repeat(100000) + nl,
+            "* B Beta III IV I AXLE" + nl + "HELLO\tWORLD" + nl,
+            "HELLO" + nl,
+            "* B Beta III IV I AXLE" + nl
+                + ("HELLO WORLD" + nl + nl).repeat(20000),
+        };
+    }
+
+    /** Return what CharMessageProcessor writes for INPUT, or the message
+     *  of the error it reports. */
+    private String charsProcessed(String input) {
+        ByteArrayOutputStream chars = new ByteArrayOutputStream();
+        return processed(new CharMessageProcessor(
+                new Machine(AZ, 5, 3, ROTORS.values()),
+                new StringReader(input), new OutputStreamWriter(chars)),
+                chars);
+    }
+
+    @Test
+    public void testByteProcessor() {
+        for (String input : asciiInputs()) {
+            String expected = charsProcessed(input);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            String actual = processed(new ByteMessageProcessor(
+                    new Machine(AZ, 5, 3, ROTORS.values()),
+                    Channels.newChannel(
+                            new ByteArrayInputStream(input.getBytes())),
+                    Channels.newChannel(bytes)), bytes);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testPartialOutput() throws IOException {
+        String nl = System.lineSeparator();
+        String setting = "* B Beta III IV I AXLE" + nl;
+        String input = setting + "HELLO WORLD" + nl + "ABC1DEF" + nl
+                + "MORE" + nl;
+        String expected = charsProcessed(setting + "HELLO WORLD" + nl
+                + "ABC" + nl);
+        expected = expected.substring(0, expected.length() - nl.length());
+        String error = "input elements not contained within alphabet.";
+
+        StringWriter chars = new StringWriter();
+        try {
+            new CharMessageProcessor(new Machine(AZ, 5, 3, ROTORS.values()),
+                    new StringReader(input), chars).process();
+            fail("Error not reported.");
+        } catch (EnigmaException excp) {
+            assertEquals(error, excp.getMessage());
+        }
+        assertEquals(expected, chars.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            new ByteMessageProcessor(new Machine(AZ, 5, 3, ROTORS.values()),
+                    Channels.newChannel(
+                            new ByteArrayInputStream(input.getBytes())),
+                    Channels.newChannel(bytes)).process();
+            fail("Error not reported.");
+        } catch (EnigmaException excp) {
+            assertEquals(error, excp.getMessage());
+        }
+        assertEquals(expected, bytes.toString());
+
+        Path dir = Files.createTempDirectory("enigma-partial");
+        Path in = dir.resolve("in");
+        Path out = dir.resolve("out");
+        try {
+            Files.write(in, input.getBytes());
+            try (FileChannel source = FileChannel.open(in,
+                    StandardOpenOption.READ);
+                 FileChannel output = FileChannel.open(out,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                new MappedMessageProcessor(
+                        new Machine(AZ, 5, 3, ROTORS.values()),
+                        source, output).process();
+                fail("Error not reported.");
+            } catch (EnigmaException excp) {
+                assertEquals(error, excp.getMessage());
+            }
+            assertEquals(expected, Files.readString(out));
+        } finally {
+            Files.deleteIfExists(in);
+            Files.deleteIfExists(out);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testMappedProcessor() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-mapped");
+        Path in = dir.resolve("in");
+        Path out = dir.resolve("out");
+        try {
+            for (String input : asciiInputs()) {
+                Files.write(in, input.getBytes());
+                String actual;
+                MappedMessageProcessor processor = null;
+                try (FileChannel source = FileChannel.open(in,
+                        StandardOpenOption.READ);
+                     FileChannel output = FileChannel.open(out,
+                        StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    processor = new MappedMessageProcessor(
+                            new Machine(AZ, 5, 3, ROTORS.values()),
+                            source, output);
+                    processor.process();
+                    actual = Files.readString(out);
+                } catch (EnigmaException excp) {
+                    actual = "Error: " + excp.getMessage();
+                }
+                assertNull(processor.mappingError());
+                assertEquals(charsProcessed(input), actual);
+            }
+        } finally {
+            Files.deleteIfExists(in);
+            Files.deleteIfExists(out);
+            Files.delete(dir);
+        }
+    }
 }
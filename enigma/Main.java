@@ -1,15 +1,29 @@
 package enigma;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Reader;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import ucb.util.CommandArgs;
 
@@ -31,19 +45,14 @@ public final class Main {
      * input.  ARGS[2] is optional; when present, it names an output
      * file for processed messages.  Otherwise, output goes to the
      * standard output. Exits normally if there are no errors in the input;
-     * otherwise with code 1.
+     * otherwise with code 1.  Messages are converted and written as they
+     * are read, so the output for the input before an error, which may
+     * end partway through a message line, is written before the error
+     * is reported.
      */
     public static void main(String... args) {
         try {
-            CommandArgs options =
-                    new CommandArgs("--verbose --=(.*){1,3}", args);
-            if (!options.ok()) {
-                throw error("Usage: java enigma.Main [--verbose] "
-                        + "[INPUT [OUTPUT]]");
-            }
-
-            _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
+            new Main(parseArgs(args)).process();
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -51,6 +60,46 @@ public final class Main {
         System.exit(1);
     }
 
+    /**
+     * Return the non-option arguments among ARGS (see comment on main),
+     * setting _verbose if --verbose is among them.  Arguments that are
+     * plain file names are handled here; only others need the option
+     * parser, and its regular expressions, to be loaded.
+     */
+    private static List<String> parseArgs(String... args) {
+        List<String> files = new ArrayList<>();
+        boolean verbose = false;
+        for (String arg : args) {
+            if (arg.equals("--verbose") && !verbose) {
+                verbose = true;
+            } else if (arg.startsWith("-")) {
+                return parseOptions(args);
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.isEmpty() || files.size() > 3) {
+            return parseOptions(args);
+        }
+        _verbose = verbose;
+        return files;
+    }
+
+    /**
+     * Return the non-option arguments among ARGS, parsed in full
+     * generality, setting _verbose if --verbose is among them.
+     */
+    private static List<String> parseOptions(String... args) {
+        CommandArgs options =
+                new CommandArgs("--verbose --=(.*){1,3}", args);
+        if (!options.ok()) {
+            throw error("Usage: java enigma.Main [--verbose] "
+                    + "[INPUT [OUTPUT]]");
+        }
+        _verbose = options.contains("--verbose");
+        return options.get("--");
+    }
+
     /**
      * Open the necessary files for non-option arguments ARGS (see comment
      * on main).
@@ -59,24 +108,43 @@ public final class Main {
         _config = getInput(args.get(0));
 
         if (args.size() > 1) {
-            _input = getInput(args.get(1));
-        } else {
-            _input = new Scanner(System.in);
+            _inputName = args.get(1);
         }
 
         if (args.size() > 2) {
-            _output = getOutput(args.get(2));
-        } else {
-            _output = System.out;
+            _outputName = args.get(2);
         }
     }
 
     /**
-     * Return a Scanner reading from the file named NAME.
+     * Return the contents of the file named NAME.
      */
-    private Scanner getInput(String name) {
+    private byte[] getInput(String name) {
         try {
-            return new Scanner(new File(name));
+            return Files.readAllBytes(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /**
+     * Return a Reader reading from the file named NAME.
+     */
+    private static Reader getReader(String name) {
+        try {
+            return new FileReader(name);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /**
+     * Return a FileChannel for the file named NAME, opened with OPTIONS.
+     */
+    private static FileChannel getChannel(String name,
+                                          OpenOption... options) {
+        try {
+            return FileChannel.open(Paths.get(name), options);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -85,7 +153,7 @@ public final class Main {
     /**
      * Return a PrintStream writing to the file named NAME.
      */
-    private PrintStream getOutput(String name) {
+    private static PrintStream getOutput(String name) {
         try {
             return new PrintStream(new File(name));
         } catch (IOException excp) {
@@ -95,45 +163,209 @@ public final class Main {
 
     /**
      * Configure an Enigma machine from the contents of configuration
-     * file _config and apply it to the messages in _input, sending the
-     * results to _output.
+     * file _config and apply it to the messages in _inputName, sending
+     * the results to _outputName.  When the alphabet is single-byte,
+     * input and output are processed as bytes, memory-mapped if both
+     * are regular files.  With --verbose, each keystroke is traced on
+     * the standard error.
      */
     private void process() {
         Machine machine = readConfig();
-        while (_input.hasNext()) {
-            if (_reserve.isEmpty()) {
-                setUpRotors(machine);
+        if (_outputName != null && !_verbose) {
+            processFiles(machine, _inputName, _outputName);
+            return;
+        }
+        if (!_verbose && MappedMessageProcessor.supports(_alphabet)) {
+            FileChannel input;
+            if (_inputName != null) {
+                input = getChannel(_inputName, StandardOpenOption.READ);
             } else {
-                setUpRotors(machine, _reserve);
+                input = new FileInputStream(FileDescriptor.in).getChannel();
             }
-            ArrayList<String> input = compileInputMessage();
-            ArrayList<String> output = compileOutputMessage(machine, input);
-            printMessageLine(output);
+            new ByteMessageProcessor(machine, input,
+                    new FileOutputStream(FileDescriptor.out).getChannel())
+                    .process();
+            return;
         }
+        Reader input;
+        if (_inputName != null) {
+            input = getReader(_inputName);
+        } else {
+            input = new InputStreamReader(System.in);
+        }
+        PrintStream output;
+        if (_outputName != null) {
+            output = getOutput(_outputName);
+        } else {
+            output = System.out;
+        }
+        if (_verbose) {
+            processTraced(machine, input, output);
+        } else {
+            new CharMessageProcessor(machine, input,
+                    new BufferedWriter(new OutputStreamWriter(output),
+                            CharMessageProcessor.BUFFER_SIZE)).process();
+        }
+    }
+
+    /**
+     * Apply MACHINE to the messages read from INPUT, writing the results
+     * to OUTPUT and tracing each keystroke on the standard error.  The
+     * tracing classes are loaded only by this method.
+     */
+    private void processTraced(Machine machine, Reader input,
+                               PrintStream output) {
+        TraceWriter tracer = new TraceWriter(_alphabet, new BufferedWriter(
+                new OutputStreamWriter(System.err), TRACE_BUFFER_SIZE));
+        machine.setTracer(tracer);
         try {
-            String end = _input.nextLine();
-            if (end.equals("")) {
-                _output.println(end);
+            new CharMessageProcessor(machine, input,
+                    new BufferedWriter(new OutputStreamWriter(output),
+                            CharMessageProcessor.BUFFER_SIZE)).process();
+        } finally {
+            tracer.close();
+        }
+    }
+
+    /**
+     * Apply MACHINE to the messages in the file named INPUTNAME, writing
+     * the results to the file named OUTPUTNAME, and close both.  When
+     * the alphabet is single-byte, both are processed as bytes, and
+     * memory-mapped if they are different regular files.
+     */
+    static void processFiles(Machine machine, String inputName,
+                             String outputName) {
+        if (MappedMessageProcessor.supports(machine.alphabet())) {
+            if (mappable(inputName, outputName)) {
+                processMapped(machine, inputName, outputName);
+            } else {
+                processBytes(machine, inputName, outputName);
             }
-        } catch (Exception e) {
             return;
         }
+        try (Reader input = getReader(inputName);
+             PrintStream output = getOutput(outputName)) {
+            new CharMessageProcessor(machine, input,
+                    new BufferedWriter(new OutputStreamWriter(output),
+                            CharMessageProcessor.BUFFER_SIZE)).process();
+        } catch (IOException excp) {
+            throw error("%s", excp.getMessage());
+        }
+    }
+
+    /**
+     * Apply MACHINE to the messages in the file named INPUTNAME, writing
+     * the results to the file named OUTPUTNAME, with both files
+     * memory-mapped.  If the files cannot be mapped, or the output cannot
+     * be cut to length while mapped, they are processed again from the
+     * start as streams of bytes.
+     */
+    private static void processMapped(Machine machine, String inputName,
+                                      String outputName) {
+        Permutation plugboard = machine.plugboard();
+        MappedMessageProcessor processor = null;
+        try (FileChannel input = getChannel(inputName,
+                StandardOpenOption.READ);
+             FileChannel output = getChannel(outputName,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            processor = new MappedMessageProcessor(machine, input, output);
+            processor.process();
+            return;
+        } catch (IOException excp) {
+            if (processor != null) {
+                throw error("%s", excp.getMessage());
+            }
+        } catch (EnigmaException excp) {
+            if (processor == null || processor.mappingError() == null) {
+                throw excp;
+            }
+        }
+        // A setting line without cycles keeps the previous plugboard.
+        machine.setPlugboard(plugboard);
+        processBytes(machine, inputName, outputName);
+    }
+
+    /**
+     * Apply MACHINE to the messages in the file named INPUTNAME, writing
+     * the results to the file named OUTPUTNAME, both read and written as
+     * streams of bytes.
+     */
+    private static void processBytes(Machine machine, String inputName,
+                                     String outputName) {
+        try (FileChannel input = getChannel(inputName,
+                StandardOpenOption.READ);
+             FileChannel output = getChannel(outputName,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            new ByteMessageProcessor(machine, input, output).process();
+        } catch (IOException excp) {
+            throw error("%s", excp.getMessage());
+        }
+    }
+
+    /**
+     * Return true iff the files named INPUTNAME and OUTPUTNAME can be
+     * memory-mapped: the input is a regular file, the output is one or
+     * does not yet exist, and they are not the same file.
+     */
+    private static boolean mappable(String inputName, String outputName) {
+        Path input = Paths.get(inputName);
+        Path output = Paths.get(outputName);
+        return Files.isRegularFile(input)
+                && (Files.isRegularFile(output) || !Files.exists(output))
+                && !sameFile(inputName, outputName);
+    }
+
+    /**
+     * Return true iff the files named NAME1 and NAME2 both exist and are
+     * the same file.
+     */
+    private static boolean sameFile(String name1, String name2) {
+        try {
+            return Files.isSameFile(Paths.get(name1), Paths.get(name2));
+        } catch (IOException excp) {
+            return false;
+        }
     }
 
     /**
      * Return an Enigma machine configured from the contents of configuration
-     * file _config.
+     * file _config, which is either a text configuration or one compiled
+     * by CompiledConfig.  A text configuration is parsed only if its
+     * compiled form is not already cached.
      */
     private Machine readConfig() {
+        Machine machine;
+        if (CompiledConfig.compiled(_config)) {
+            machine = CompiledConfig.decode(_config);
+        } else {
+            machine = CompiledConfig.cached(_config);
+            if (machine == null) {
+                machine = parseConfig(new Scanner(
+                        new ByteArrayInputStream(_config)));
+                CompiledConfig.cache(_config, machine);
+            }
+        }
+        _alphabet = machine.alphabet();
+        return machine;
+    }
+
+    /**
+     * Return an Enigma machine configured from the text configuration
+     * read by CONFIG.
+     */
+    private Machine parseConfig(Scanner config) {
         try {
-            String alpha = _config.nextLine();
+            String alpha = config.nextLine();
             alpha.trim();
             _alphabet = new Alphabet(alpha);
             _rotors = new ArrayList<>();
 
             int numRotors = -1;
             int numPawls = -1;
-            Scanner numerics = new Scanner(_config.nextLine());
+            Scanner numerics = new Scanner(config.nextLine());
             while (numerics.hasNext()) {
                 if (numerics.hasNextInt()) {
                     if (numRotors == -1) {
@@ -148,13 +380,13 @@ public final class Main {
                 }
             }
 
-            while (_config.hasNext()) {
-                _config.useDelimiter("[\\s]+");
-                String rotorName = _config.next();
-                String typeNotch = _config.next();
+            while (config.hasNext()) {
+                config.useDelimiter("[\\s]+");
+                String rotorName = config.next();
+                String typeNotch = config.next();
                 char rotorType = typeNotch.charAt(0);
                 String notches = typeNotch.substring(1);
-                String cycles = parseCycles(_config);
+                String cycles = parseCycles(config, _alphabet);
 
                 Permutation newPerm = new Permutation(cycles, _alphabet);
                 if (rotorType == 'R') {
@@ -179,145 +411,52 @@ public final class Main {
         }
     }
 
-    private String parseCycles(Scanner sc) {
+    /**
+     * Return an Enigma machine configured from the contents of the
+     * configuration file named NAME.
+     */
+    static Machine readConfig(String name) {
+        return new Main(List.of(name)).readConfig();
+    }
+
+    /**
+     * Return the cycles at the current position of SC, which must all
+     * consist of characters of ALPHABET, consuming the rest of the line.
+     */
+    static String parseCycles(Scanner sc, Alphabet alphabet) {
         String cycles = "";
         sc.useDelimiter("[\\s]+");
         while (sc.hasNext("\\(.*\\)")) {
-            Pattern cyclePattern = Pattern.compile("(\\(.*\\))+");
-            Matcher cycleMatcher = cyclePattern.matcher(sc.nextLine());
-            while (cycleMatcher.find()) {
-                String newCycle = cycleMatcher.group();
-                if (newCycle.length() <= 2) {
-                    throw error("Empty cycle in config.");
-                }
-                for (int i = 0; i < newCycle.length(); i++) {
-                    if (newCycle.charAt(i) != '('
-                            && newCycle.charAt(i) != ')'
-                            && newCycle.charAt(i) != ' '
-                            && !_alphabet.contains(newCycle.charAt(i))) {
-                        throw error("Invalid cycle config.");
-                    }
-                }
-                cycles += newCycle + " ";
-            }
+            cycles += parseCycles(sc.nextLine(), alphabet);
         }
         return cycles;
     }
 
     /**
-     * Set MACHINE according to the specification given by input,
-     * which must have the format specified in the assignment.
+     * Return the cycles in LINE, which must all consist of characters of
+     * ALPHABET, followed by a blank, or "" if it has none.  As with the
+     * pattern (\(.*\))+, the cycles extend from the first '(' in
+     * LINE to the last ')'.
      */
-    private void setUpRotors(Machine machine) {
-        _input.useDelimiter("[\\s]+");
-        if (_input.hasNext("\\*")) {
-            String settings = _input.nextLine();
-            Scanner sc = new Scanner(settings);
-            sc.useDelimiter("[\\s]+");
-            sc.next();
-            String[] combination = new String[machine.numRotors()];
-            for (int i = 0; i < machine.numRotors(); i++) {
-                combination[i] = sc.next();
-            }
-            machine.insertRotors(combination);
-
-            String setting = sc.next();
-            String rings = "";
-            machine.setRotors(setting);
-
-            if (sc.hasNext("[\\w]+")) {
-                rings = sc.next();
-            }
-
-            if (sc.hasNext("(\\(.*\\))+")) {
-                String plugboard = parseCycles(sc);
-                machine.setPlugboard(new Permutation(plugboard, _alphabet));
-            }
-
-            if (!rings.equals("")) {
-                machine.setRings(rings);
-            }
-
-        } else {
-            throw error("Malformed start of input setting.");
+    static String parseCycles(String line, Alphabet alphabet) {
+        int start = line.indexOf('(');
+        int end = line.lastIndexOf(')');
+        if (start == -1 || end < start) {
+            return "";
         }
-    }
-
-    private void setUpRotors(Machine machine, String reserve) {
-        Scanner sc = new Scanner(reserve);
-        sc.useDelimiter("[\\s]+");
-        if (sc.hasNext("\\*")) {
-            sc.next();
-            String[] combination = new String[machine.numRotors()];
-            for (int i = 0; i < machine.numRotors(); i++) {
-                combination[i] = sc.next();
-            }
-
-            String setting = sc.next();
-            String rings = "";
-
-            if (sc.hasNext("[\\w]+")) {
-                rings = sc.next();
-            }
-
-            if (sc.hasNext("(\\(.*\\))+")) {
-                String plugboard = parseCycles(sc);
-                machine.setPlugboard(new Permutation(plugboard, _alphabet));
-            }
-
-            machine.insertRotors(combination);
-            machine.setRotors(setting);
-
-            if (!rings.equals("")) {
-                machine.setRings(rings);
-            }
-
-        } else {
-            throw error("Malformed start of input setting.");
-        }
-    }
-
-    private ArrayList<String> compileInputMessage() {
-        ArrayList<String> input = new ArrayList<>();
-        while (_input.hasNextLine()
-                && !_input.hasNext("\\*")) {
-            String line = _input.nextLine();
-            String condensed = "";
-            for (int i = 0; i < line.length(); i++) {
-                if (line.charAt(i) != '('
-                        && line.charAt(i) != ')'
-                        && line.charAt(i) != ' '
-                        && !_alphabet.contains(line.charAt(i))) {
-                    throw error("input elements "
-                            + "not contained within alphabet.");
-                } else if (line.charAt(i) != ' ') {
-                    condensed += Character.toString(line.charAt(i));
-                }
-            }
-            input.add(condensed);
-        }
-        if (_input.hasNextLine()) {
-            String test = _input.nextLine();
-            if (test.equals("")) {
-                input.add(test);
-            } else {
-                _reserve = test;
-            }
+        String newCycle = line.substring(start, end + 1);
+        if (newCycle.length() <= 2) {
+            throw error("Empty cycle in config.");
         }
-        return input;
-    }
-
-    private ArrayList<String> compileOutputMessage(Machine machine,
-                                                   ArrayList<String> input) {
-        ArrayList<String> output = new ArrayList<>();
-        for (String s : input) {
-            if (s.equals("")) {
-                output.add(s);
-            } else {
-                output.add(machine.convert(s));
+        for (int i = 0; i < newCycle.length(); i++) {
+            if (newCycle.charAt(i) != '('
+                    && newCycle.charAt(i) != ')'
+                    && newCycle.charAt(i) != ' '
+                    && !alphabet.contains(newCycle.charAt(i))) {
+                throw error("Invalid cycle config.");
             }
         }
-        return output;
+        return newCycle + " ";
     }
 
     /**
@@ -327,29 +466,8 @@ public final class Main {
         return _verbose;
     }
 
-    /**
-     * Print MSG in groups of five (except that the last group may
-     * have fewer letters).
-     * @param output the output to be printed.
-     */
-
-    private void printMessageLine(ArrayList<String> output) {
-        for (String s : output) {
-            String formatted = "";
-            if (s.equals("")) {
-                _output.println(s);
-            } else {
-                for (int i = 0; i < s.length(); i++) {
-                    if ((i + 1) % 5 == 0) {
-                        formatted += Character.toString(s.charAt(i)) + " ";
-                    } else {
-                        formatted += Character.toString(s.charAt(i));
-                    }
-                }
-                _output.println(formatted);
-            }
-        }
-    }
+    /** Size of the buffer through which --verbose traces are written. */
+    static final int TRACE_BUFFER_SIZE = 1 << 16;
 
     /**
      * Alphabet used in this machine.
@@ -357,19 +475,20 @@ public final class Main {
     private Alphabet _alphabet;
 
     /**
-     * Source of input messages.
+     * Name of the file of input messages, or null for the standard input.
      */
-    private Scanner _input;
+    private String _inputName;
 
     /**
-     * Source of machine configuration.
+     * Contents of the configuration file.
      */
-    private Scanner _config;
+    private byte[] _config;
 
     /**
-     * File for encoded/decoded messages.
+     * Name of the file for encoded/decoded messages, or null for the
+     * standard output.
      */
-    private PrintStream _output;
+    private String _outputName;
 
     /**
      * True if --verbose specified.
@@ -385,9 +504,4 @@ public final class Main {
      * List of forbidden alphabet characters.
      */
     private char[] forbidden = {'(', ')', ' '};
-
-    /**
-     * Subsequent setting line if parsed.
-     */
-    private String _reserve = "";
 }
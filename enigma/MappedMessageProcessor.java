@@ -0,0 +1,295 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A MessageProcessor for files whose alphabet consists of single-byte
+ * (ASCII) characters.  The input and output files are memory-mapped a
+ * region at a time; message bytes are classified through a 256-entry
+ * table, converted by a CompiledMachine and written, with group
+ * separators, directly into the mapped output.  The output is first
+ * mapped at about the size the input converts to and grown as needed,
+ * and cut to the bytes written at the end.  Some systems refuse to cut
+ * a file that is still mapped; mappingError() reports that, or any
+ * other failure to map, so that the caller may process the files as
+ * plain byte streams instead.
+ *
+ * @author Bradley Tian
+ */
+class MappedMessageProcessor extends MessageProcessor {
+
+    /**
+     * A processor that applies setting lines read from INPUT to MACHINE
+     * and writes the conversion of each message line to OUTPUT, which
+     * must be open for both reading and writing and is truncated to the
+     * length of the output when processing ends.  The alphabet of
+     * MACHINE must be supported.
+     */
+    MappedMessageProcessor(Machine machine, FileChannel input,
+                           FileChannel output) throws IOException {
+        super(machine);
+        _input = input;
+        _output = output;
+        _inputSize = input.size();
+        _codes = codes(_alphabet);
+        _bytes = bytes(_alphabet);
+        _separator = LINE_SEPARATOR.getBytes(StandardCharsets.US_ASCII);
+        _outputEstimate = _inputSize + _inputSize / GROUP_SIZE
+                + _separator.length;
+        _in = map(input, FileChannel.MapMode.READ_ONLY, 0,
+                Math.min(REGION_SIZE, _inputSize));
+        _out = map(output, FileChannel.MapMode.READ_WRITE, 0,
+                outputRegion());
+    }
+
+    /**
+     * Return true iff every character of ALPHABET is a single byte in
+     * the default charset, so that files in that charset can be
+     * processed byte by byte with the same results as through a Reader.
+     */
+    static boolean supports(Alphabet alphabet) {
+        for (int i = 0; i < alphabet.size(); i++) {
+            if (alphabet.toChar(i) >= ASCII_LIMIT) {
+                return false;
+            }
+        }
+        byte[] ascii = new byte[ASCII_LIMIT];
+        char[] chars = new char[ASCII_LIMIT];
+        for (int b = 0; b < ASCII_LIMIT; b++) {
+            ascii[b] = (byte) b;
+            chars[b] = (char) b;
+        }
+        return new String(ascii, Charset.defaultCharset())
+                .equals(new String(chars));
+    }
+
+    /**
+     * Return, for each byte, its index in ALPHABET, -1 for parentheses
+     * (which convert as the last character, as in Machine), or one of
+     * SKIP, NEWLINE, RETURN and INVALID.
+     */
+    static int[] codes(Alphabet alphabet) {
+        int[] codes = new int[1 << Byte.SIZE];
+        for (int b = 0; b < codes.length; b++) {
+            if (b == ' ') {
+                codes[b] = SKIP;
+            } else if (b == '\n') {
+                codes[b] = NEWLINE;
+            } else if (b == '\r') {
+                codes[b] = RETURN;
+            } else if (b == '(' || b == ')' || alphabet.contains((char) b)) {
+                codes[b] = alphabet.toInt((char) b);
+            } else {
+                codes[b] = INVALID;
+            }
+        }
+        return codes;
+    }
+
+    /** Return the characters of ALPHABET, a supported alphabet, as
+     *  bytes. */
+    static byte[] bytes(Alphabet alphabet) {
+        byte[] bytes = new byte[alphabet.size()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) alphabet.toChar(i);
+        }
+        return bytes;
+    }
+
+    @Override
+    void messageLine() throws IOException {
+        CompiledMachine engine = _machine.compile();
+        int column = 0;
+        try {
+            while (_in.hasRemaining() || nextInput()) {
+                int code = _codes[_in.get() & BYTE_MASK];
+                if (code >= -1) {
+                    if (_out.remaining() < 2) {
+                        nextOutput();
+                    }
+                    _out.put(_bytes[engine.convert(code)]);
+                    column += 1;
+                    if (column == GROUP_SIZE) {
+                        _out.put((byte) ' ');
+                        column = 0;
+                    }
+                } else if (code == SKIP) {
+                    continue;
+                } else if (code == NEWLINE) {
+                    break;
+                } else if (code == RETURN) {
+                    skipNewline();
+                    break;
+                } else {
+                    throw error("input elements "
+                            + "not contained within alphabet.");
+                }
+            }
+        } finally {
+            engine.store(_machine);
+        }
+        writeLines(1);
+    }
+
+    @Override
+    int read() throws IOException {
+        if (!_in.hasRemaining() && !nextInput()) {
+            return -1;
+        }
+        return _in.get() & BYTE_MASK;
+    }
+
+    @Override
+    int peek() throws IOException {
+        if (!_in.hasRemaining() && !nextInput()) {
+            return -1;
+        }
+        return _in.get(_in.position()) & BYTE_MASK;
+    }
+
+    @Override
+    void unread() {
+        _in.position(_in.position() - 1);
+    }
+
+    @Override
+    void writeLines(int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            if (_out.remaining() < _separator.length) {
+                nextOutput();
+            }
+            _out.put(_separator);
+        }
+    }
+
+    /** Cut the output file down to the bytes actually written. */
+    @Override
+    void flush() throws IOException {
+        try {
+            _output.truncate(_outputBase + _out.position());
+        } catch (IOException excp) {
+            _mappingError = excp;
+            throw excp;
+        }
+    }
+
+    /** Return the error with which mapping or cutting a file failed, or
+     *  null if there was none.  Processing stops at such an error, which
+     *  process() reports as an EnigmaException. */
+    IOException mappingError() {
+        return _mappingError;
+    }
+
+    /** Map the next region of the input, returning false if there is
+     *  none. */
+    private boolean nextInput() throws IOException {
+        long base = _inputBase + _in.limit();
+        if (base >= _inputSize) {
+            return false;
+        }
+        _inputBase = base;
+        _in = map(_input, FileChannel.MapMode.READ_ONLY, base,
+                Math.min(REGION_SIZE, _inputSize - base));
+        return true;
+    }
+
+    /** Map a new output region starting after the bytes written so
+     *  far. */
+    private void nextOutput() throws IOException {
+        _outputBase += _out.position();
+        _out = map(_output, FileChannel.MapMode.READ_WRITE, _outputBase,
+                outputRegion());
+    }
+
+    /** Return the region of SIZE bytes at BASE of CHANNEL mapped in
+     *  MODE, recording any failure as my mapping error. */
+    private MappedByteBuffer map(FileChannel channel,
+                                 FileChannel.MapMode mode, long base,
+                                 long size) throws IOException {
+        try {
+            return channel.map(mode, base, size);
+        } catch (IOException excp) {
+            _mappingError = excp;
+            throw excp;
+        }
+    }
+
+    /** Return the size of the output region to map at _outputBase: the
+     *  rest of the estimated output or, once that is exceeded, half as
+     *  much again as has been written, within MIN_REGION..REGION_SIZE. */
+    private long outputRegion() {
+        long size = Math.max(_outputEstimate - _outputBase,
+                _outputBase / 2);
+        return Math.min(REGION_SIZE, Math.max(MIN_REGION, size));
+    }
+
+    /** Size of the regions of the input and output mapped at once. */
+    static final long REGION_SIZE = 1 << 28;
+
+    /** Smallest output region mapped. */
+    static final long MIN_REGION = 1 << 12;
+
+    /** Characters below this value are single bytes in ASCII. */
+    private static final int ASCII_LIMIT = 128;
+
+    /** Mask selecting the unsigned value of a byte. */
+    static final int BYTE_MASK = 0xFF;
+
+    /** Code for a blank, which is dropped from messages. */
+    static final int SKIP = -2;
+
+    /** Code for a newline. */
+    static final int NEWLINE = -3;
+
+    /** Code for a carriage return. */
+    static final int RETURN = -4;
+
+    /** Code for a byte that may not appear in a message. */
+    static final int INVALID = -5;
+
+    /** The file being processed. */
+    private final FileChannel _input;
+
+    /** The file receiving the output. */
+    private final FileChannel _output;
+
+    /** The length of _input. */
+    private final long _inputSize;
+
+    /** The length of the output of _input if it is all message, in
+     *  groups on a single line: an estimate of the output length. */
+    private final long _outputEstimate;
+
+    /** For each byte, its index in the alphabet, -1 for parentheses
+     *  (which convert as the last character, as in Machine), or one of
+     *  SKIP, NEWLINE, RETURN and INVALID. */
+    private final int[] _codes;
+
+    /** The alphabet, as bytes. */
+    private final byte[] _bytes;
+
+    /** Bytes of LINE_SEPARATOR. */
+    private final byte[] _separator;
+
+    /** The currently mapped region of the input. */
+    private MappedByteBuffer _in;
+
+    /** Offset of _in in the input file. */
+    private long _inputBase;
+
+    /** The currently mapped region of the output. */
+    private MappedByteBuffer _out;
+
+    /** Offset of _out in the output file. */
+    private long _outputBase;
+
+    /** The error with which mapping or cutting a file failed, or
+     *  null. */
+    private IOException _mappingError;
+}
@@ -0,0 +1,457 @@
+package enigma;
+
+import java.io.IOException;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Streams messages in the input format of Main through a Machine.  Input
+ * is split into setting lines (those whose first token is "*") and
+ * message lines; subclasses supply the input and output and convert
+ * message lines as they arrive, writing them out in groups of five, so
+ * memory use does not depend on the length of a message.  Unlike a
+ * reader of the whole input, this writes output before the input has
+ * been checked: when an error is found, the conversion of everything
+ * before it, including the start of the message line in error, has
+ * been written, and is flushed before the error is reported.
+ *
+ * @author Bradley Tian
+ */
+abstract class MessageProcessor {
+
+    /** A processor that applies setting lines from its input to MACHINE
+     *  and converts its message lines with MACHINE. */
+    MessageProcessor(Machine machine) {
+        _machine = machine;
+        _template = null;
+        _alphabet = machine.alphabet();
+    }
+
+    /** A processor that converts the message lines of its input with a
+     *  cursor of TEMPLATE created by each setting line. */
+    MessageProcessor(MachineTemplate template) {
+        _machine = null;
+        _template = template;
+        _alphabet = template.alphabet();
+    }
+
+    /**
+     * Process all of my input, flushing whatever output has been
+     * produced even if an error is found.
+     */
+    void process() {
+        try {
+            try {
+                while (processLine()) {
+                    continue;
+                }
+                finish();
+            } finally {
+                flush();
+            }
+        } catch (IOException excp) {
+            throw error("%s", excp.getMessage());
+        }
+    }
+
+    /**
+     * Process the next line of input, returning false if there was
+     * none.
+     */
+    private boolean processLine() throws IOException {
+        boolean empty = true;
+        boolean otherSpace = false;
+        int ch;
+        while (true) {
+            ch = read();
+            if (ch == ' ') {
+                empty = false;
+            } else if (ch == '\t' || ch == '\f' || ch == '\u000B') {
+                empty = false;
+                otherSpace = true;
+            } else {
+                break;
+            }
+        }
+        if (ch == -1 && empty) {
+            return false;
+        } else if (ch == -1 || ch == '\n' || ch == '\r') {
+            if (ch == '\r') {
+                skipNewline();
+            }
+            blankLine(empty, otherSpace);
+        } else if (ch == '*' && endOfToken(peek())) {
+            settingLine();
+        } else if (!_configured) {
+            throw error("Malformed start of input setting.");
+        } else if (otherSpace || ch == '*') {
+            throw error("input elements not contained within alphabet.");
+        } else {
+            applyDeferred();
+            releasePending(false);
+            unread();
+            messageLine();
+            _seenLine = true;
+        }
+        return true;
+    }
+
+    /**
+     * Record a line containing only whitespace, which is EMPTY if it
+     * has no characters at all and contains characters other than
+     * blanks if OTHERSPACE.  Whether it belongs to the current message
+     * depends on what follows it.
+     */
+    private void blankLine(boolean empty, boolean otherSpace) {
+        if (!_configured) {
+            if (!_seenLine) {
+                _firstLineEmpty = empty;
+            }
+        } else {
+            if (empty && _pendingPrefix == _pendingLines) {
+                _pendingPrefix += 1;
+            }
+            _pendingLines += 1;
+            _pendingBlanks |= !empty;
+            _pendingOther |= otherSpace;
+        }
+        _seenLine = true;
+    }
+
+    /**
+     * Write out the whitespace-only lines seen since the last non-blank
+     * line, as empty lines.  If BEFORESETTING, they precede a setting
+     * line and must be completely empty.
+     */
+    private void releasePending(boolean beforeSetting) throws IOException {
+        if (beforeSetting && (_pendingBlanks || _pendingOther)) {
+            writeLines(_pendingPrefix);
+            throw error("Malformed start of input setting.");
+        } else if (_pendingOther) {
+            throw error("input elements not contained within alphabet.");
+        }
+        writeLines(_pendingLines);
+        _pendingLines = _pendingPrefix = 0;
+        _pendingBlanks = false;
+    }
+
+    /**
+     * Apply the setting line whose application was deferred until
+     * something followed it, if any.
+     */
+    private void applyDeferred() {
+        if (_deferred != null) {
+            setUp(_deferred);
+            _deferred = null;
+        }
+    }
+
+    /** Handle the end of input. */
+    private void finish() throws IOException {
+        if (_deferred != null) {
+            writeLines(Math.min(_pendingPrefix, 1));
+        } else if (_configured) {
+            releasePending(false);
+        } else if (_seenLine && _firstLineEmpty) {
+            writeLines(1);
+        }
+    }
+
+    /**
+     * Read the rest of a setting line whose leading "*" has been read,
+     * and set up my machine accordingly.  A setting line that directly
+     * ends a message takes effect only once more input follows it; one
+     * that ends a message followed by a single empty line takes effect
+     * at once, unless an earlier setting line has been deferred.
+     */
+    private void settingLine() throws IOException {
+        StringBuilder line = new StringBuilder("*");
+        for (int ch = read(); ch != -1 && ch != '\n'; ch = read()) {
+            if (ch == '\r') {
+                skipNewline();
+                break;
+            }
+            line.append((char) ch);
+        }
+        if (!_configured) {
+            setUp(line.toString());
+            _configured = true;
+        } else {
+            applyDeferred();
+            boolean immediate = _pendingLines == 1 && !_deferring;
+            releasePending(true);
+            if (immediate) {
+                setUp(line.toString());
+            } else {
+                _deferred = line.toString();
+                _deferring = true;
+            }
+        }
+        _seenLine = true;
+    }
+
+    /**
+     * Set my machine according to SETTINGS, a setting line in the format
+     * specified in the assignment.
+     */
+    private void setUp(String settings) {
+        if (_template != null) {
+            _cursor = _template.cursor(settings, _cursor);
+        } else {
+            setUp(_machine, settings);
+        }
+    }
+
+    /**
+     * Return the compiled machine with which to convert the characters
+     * of a message line: that of my cursor, or my machine's, or null if
+     * my machine's keystrokes are traced.  Its positions are copied
+     * back into my machine by release.
+     */
+    CompiledMachine engine() {
+        return _cursor != null ? _cursor.engine() : _machine.engine();
+    }
+
+    /** Return the conversion of the index C, advancing the rotors, by
+     *  ENGINE, as returned by engine(). */
+    int convert(CompiledMachine engine, int c) {
+        return engine != null ? engine.convert(c) : _machine.convert(c);
+    }
+
+    /** Finish converting a message line with ENGINE, as returned by
+     *  engine(). */
+    void release(CompiledMachine engine) {
+        if (_cursor == null) {
+            _machine.release(engine);
+        }
+    }
+
+    /**
+     * Set MACHINE according to SETTINGS, a setting line in the format
+     * specified in the assignment.  The line is split into tokens as a
+     * Scanner delimited by [\s]+ would split it, but without loading
+     * Scanner or regular expressions, which dominate the time taken by
+     * a short run.
+     */
+    static void setUp(Machine machine, String settings) {
+        Alphabet alphabet = machine.alphabet();
+        SettingScanner sc = new SettingScanner(settings);
+        if (!"*".equals(sc.peek())) {
+            throw error("Malformed start of input setting.");
+        }
+        sc.next();
+        String[] combination = new String[machine.numRotors()];
+        for (int i = 0; i < machine.numRotors(); i++) {
+            combination[i] = sc.next();
+        }
+        machine.insertRotors(combination);
+
+        String setting = sc.next();
+        String rings = "";
+        machine.setRotors(setting);
+
+        if (SettingScanner.word(sc.peek())) {
+            rings = sc.next();
+        }
+
+        if (SettingScanner.cycles(sc.peek())) {
+            String plugboard = "";
+            while (SettingScanner.cycles(sc.peek())) {
+                plugboard += Main.parseCycles(sc.nextLine(), alphabet);
+            }
+            machine.setPlugboard(new Permutation(plugboard, alphabet));
+        }
+
+        if (!rings.equals("")) {
+            machine.setRings(rings);
+        }
+    }
+
+    /**
+     * Splits a setting line into tokens and lines exactly as a Scanner
+     * delimited by [\s]+ would, for the methods used by setUp.
+     */
+    private static class SettingScanner {
+
+        /** A scanner of LINE. */
+        SettingScanner(String line) {
+            _line = line;
+        }
+
+        /** Return the next token without consuming it, or null if there
+         *  is none. */
+        String peek() {
+            int start = _pos;
+            while (start < _line.length() && space(_line.charAt(start))) {
+                start += 1;
+            }
+            int end = start;
+            while (end < _line.length() && !space(_line.charAt(end))) {
+                end += 1;
+            }
+            _end = end;
+            return start == end ? null : _line.substring(start, end);
+        }
+
+        /** Consume and return the next token. */
+        String next() {
+            String token = peek();
+            if (token == null) {
+                throw error("Input setting truncated.");
+            }
+            _pos = _end;
+            return token;
+        }
+
+        /** Consume and return the rest of the current line, without its
+         *  line separator. */
+        String nextLine() {
+            int end = _pos;
+            while (end < _line.length() && !newline(_line.charAt(end))) {
+                end += 1;
+            }
+            String rest = _line.substring(_pos, end);
+            if (_line.startsWith("\r\n", end)) {
+                end += 2;
+            } else if (end < _line.length()) {
+                end += 1;
+            }
+            _pos = end;
+            return rest;
+        }
+
+        /** Return true iff TOKEN, which may be null, matches [\w]+. */
+        static boolean word(String token) {
+            if (token == null) {
+                return false;
+            }
+            for (int i = 0; i < token.length(); i++) {
+                char ch = token.charAt(i);
+                if (!(ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z'
+                        || ch >= '0' && ch <= '9' || ch == '_')) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Return true iff TOKEN, which may be null, matches \(.*\). */
+        static boolean cycles(String token) {
+            if (token == null || token.length() < 2
+                    || token.charAt(0) != '('
+                    || token.charAt(token.length() - 1) != ')') {
+                return false;
+            }
+            for (int i = 0; i < token.length(); i++) {
+                if (newline(token.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Return true iff CH matches \s. */
+        static boolean space(char ch) {
+            return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B'
+                    || ch == '\f' || ch == '\r';
+        }
+
+        /** Return true iff CH ends a line for Scanner.nextLine. */
+        static boolean newline(char ch) {
+            return ch == '\n' || ch == '\r' || ch == '\u2028'
+                    || ch == '\u2029' || ch == '\u0085';
+        }
+
+        /** The line scanned. */
+        private final String _line;
+
+        /** Index in _line of the next character to scan. */
+        private int _pos;
+
+        /** Index in _line of the end of the token last peeked at. */
+        private int _end;
+    }
+
+    /** Return true iff CH, a character or -1, ends a token. */
+    private static boolean endOfToken(int ch) {
+        return ch == -1 || ch == ' ' || ch == '\t' || ch == '\n'
+                || ch == '\r' || ch == '\f' || ch == '\u000B';
+    }
+
+    /** Consume a newline immediately following a carriage return. */
+    void skipNewline() throws IOException {
+        if (peek() == '\n') {
+            read();
+        }
+    }
+
+    /** Return the next input character, or -1 at the end of input. */
+    abstract int read() throws IOException;
+
+    /** Return the next input character without consuming it, or -1 at
+     *  the end of input. */
+    abstract int peek() throws IOException;
+
+    /** Push back the character just returned by read(), which was not
+     *  followed by a call to peek(). */
+    abstract void unread();
+
+    /**
+     * Convert the message line starting at the current input position,
+     * up to and including its line terminator, writing it out in groups
+     * of five followed by a line separator.
+     */
+    abstract void messageLine() throws IOException;
+
+    /** Write N empty lines. */
+    abstract void writeLines(int n) throws IOException;
+
+    /** Write out any buffered output. */
+    abstract void flush() throws IOException;
+
+    /** Number of characters in an output group. */
+    static final int GROUP_SIZE = 5;
+
+    /** Ends each output line, as println would. */
+    static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** The machine converting my messages, or null if they are
+     *  converted by cursors of _template. */
+    protected final Machine _machine;
+
+    /** The template of my cursors, or null. */
+    private final MachineTemplate _template;
+
+    /** The cursor created by the last setting line, or null. */
+    private MachineTemplate.Cursor _cursor;
+
+    /** The alphabet of _machine. */
+    protected final Alphabet _alphabet;
+
+    /** True once a setting line has been processed. */
+    private boolean _configured;
+
+    /** True once any line has been read. */
+    private boolean _seenLine;
+
+    /** A setting line not yet applied, or null. */
+    private String _deferred;
+
+    /** True once any setting line has been deferred. */
+    private boolean _deferring;
+
+    /** True if the first input line was empty. */
+    private boolean _firstLineEmpty;
+
+    /** Number of whitespace-only lines not yet written out. */
+    private int _pendingLines;
+
+    /** Number of empty lines at the start of the pending lines. */
+    private int _pendingPrefix;
+
+    /** True if any pending line contains blanks. */
+    private boolean _pendingBlanks;
+
+    /** True if any pending line contains whitespace other than blanks. */
+    private boolean _pendingOther;
+}
@@ -24,6 +24,8 @@ class MovingRotor extends Rotor {
         }
         _position = 0;
         _notches = notches;
+        _newNotches = notches;
+        maskNotches();
     }
 
     @Override
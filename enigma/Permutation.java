@@ -1,7 +1,7 @@
 package enigma;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
 import static enigma.EnigmaException.*;
 
@@ -50,43 +50,64 @@ class Permutation {
             }
         }
 
-        permutations = new HashMap<>();
+        _forward = new int[_alphabet.size()];
+        _inverse = new int[_alphabet.size()];
+        Arrays.fill(_forward, -1);
 
         for (int i = 0; i < cycleCollection.size(); i++) {
             addCycle(cycleCollection.get(i));
         }
 
-        if (permutations.keySet().size() < _alphabet.size()) {
-            for (int i = 0; i < _alphabet.size(); i++) {
-                if (!permutations.containsKey(_alphabet.toChar(i))) {
-                    permutations.put(_alphabet.toChar(i), _alphabet.toChar(i));
-                }
+        for (int i = 0; i < _forward.length; i++) {
+            if (_forward[i] == -1) {
+                _forward[i] = i;
             }
+            _inverse[_forward[i]] = i;
+        }
+    }
+
+    /**
+     * Set this Permutation to the one sending each index K of ALPHABET
+     * to FORWARD[K], which must contain each index exactly once.
+     */
+    Permutation(int[] forward, Alphabet alphabet) throws EnigmaException {
+        _alphabet = alphabet;
+        cycleCollection = new ArrayList<>();
+        if (forward.length != alphabet.size()) {
+            throw error("permutation does not match alphabet.");
+        }
+        _forward = forward.clone();
+        _inverse = new int[_forward.length];
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < _forward.length; i++) {
+            if (_forward[i] < 0 || _forward[i] >= _forward.length
+                    || _inverse[_forward[i]] != -1) {
+                throw error("duplicate permutation detected.");
+            }
+            _inverse[_forward[i]] = i;
         }
     }
 
     /**
      * Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     * c0c1...cm.
+     * c0c1...cm.  A character repeated next to itself counts once, so
+     * that (AA) fixes A and (ABB) swaps A and B.
      */
     private void addCycle(String cycle) throws EnigmaException {
-        char firstElement = cycle.charAt(0);
-        if (permutations.containsKey(firstElement)) {
+        int first = _alphabet.toInt(cycle.charAt(0));
+        if (_forward[first] != -1) {
             throw error("duplicate permutation detected.");
-        } else {
-            char last = firstElement;
-
-            for (int i = 1; i < cycle.length(); i++) {
-                if (permutations.containsKey(cycle.charAt(i))) {
-                    throw error("duplicate permutation detected.");
-                } else {
-                    permutations.put(last, cycle.charAt(i));
-                    last = cycle.charAt(i);
-                }
+        }
+        int last = first;
+        for (int i = 1; i < cycle.length(); i++) {
+            int next = _alphabet.toInt(cycle.charAt(i));
+            if (_forward[next] != -1) {
+                throw error("duplicate permutation detected.");
             }
-
-            permutations.put(last, firstElement);
+            _forward[last] = next;
+            last = next;
         }
+        _forward[last] = first;
     }
 
     /**
@@ -111,24 +132,16 @@ class Permutation {
      * Return the result of applying this permutation to P modulo the
      * alphabet size.
      */
-    int permute(int p) throws EnigmaException {
-        int apply = wrap(p);
-        if (apply < 0 || apply >= _alphabet.size()) {
-            throw error("invalid permuting position.");
-        }
-        return _alphabet.toInt(permute(_alphabet.toChar(apply)));
+    int permute(int p) {
+        return _forward[wrap(p)];
     }
 
     /**
      * Return the result of applying the inverse of this permutation
      * to  C modulo the alphabet size.
      */
-    int invert(int c) throws EnigmaException {
-        int apply = wrap(c);
-        if (apply < 0 || apply >= _alphabet.size()) {
-            throw error("invalid permuting position.");
-        }
-        return _alphabet.toInt(invert(_alphabet.toChar(apply)));
+    int invert(int c) {
+        return _inverse[wrap(c)];
     }
 
     /**
@@ -139,7 +152,7 @@ class Permutation {
         if (!_alphabet.contains(p)) {
             throw error("character not in alphabet.");
         } else {
-            return permutations.get(p);
+            return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
         }
     }
 
@@ -147,12 +160,11 @@ class Permutation {
      * Return the result of applying the inverse of this permutation to C.
      */
     char invert(char c) throws EnigmaException {
-        for (char key : permutations.keySet()) {
-            if (permutations.get(key) == c) {
-                return key;
-            }
+        if (!_alphabet.contains(c)) {
+            throw error("character not in alphabet.");
+        } else {
+            return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
         }
-        throw error("character not in alphabet.");
     }
 
     /**
@@ -181,6 +193,10 @@ class Permutation {
     /** Collection of permutations. */
     private ArrayList<String> cycleCollection;
 
-    /** Representation of the permuted wiring. */
-    private HashMap<Character, Character> permutations;
+    /** The index to which each index of the alphabet is sent. */
+    private int[] _forward;
+
+    /** The index from which each index of the alphabet is sent; the
+     *  inverse of _forward. */
+    private int[] _inverse;
 }
@@ -116,10 +116,33 @@ public class PermutationTest {
         assertEquals('A', p.permute('Y'));
     }
 
+    @Test
+    public void adjacentRepeatTests() {
+        Alphabet a = getNewAlphabet("ABCD");
+        checkPerm("fixed", "ABCD", "ABCD", getNewPermutation("(AA)", a), a);
+        checkPerm("collapsed", "ABCD", "BADC",
+                getNewPermutation("(ABB) (CCD)", a), a);
+    }
+
     @Test(expected = EnigmaException.class)
     public void repeatedCycleTests() {
         Alphabet a = getNewAlphabet("AZBYC");
         Permutation p = getNewPermutation("(AZBY) (CA)", a);
         p.permute('C');
     }
+
+    @Test
+    public void sparseAlphabetTests() {
+        Alphabet a = getNewAlphabet("A\u4e00\uac00\uffee");
+        Permutation p = getNewPermutation("(A\uac00) (\uffee)", a);
+        checkPerm("sparse", "A\u4e00\uac00\uffee",
+                "\uac00\u4e00A\uffee", p, a);
+        assertFalse(a.contains('B'));
+        assertEquals(-1, a.toInt('\u4e01'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void duplicateAlphabetTests() {
+        getNewAlphabet("ABCA");
+    }
 }
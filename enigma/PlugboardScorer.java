@@ -0,0 +1,391 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * The decryption of one message under a fixed rotor setting and a
+ * changing plugboard, scored by one of several measures.  The rotor core
+ * permutation (rotors and reflector, without the plugboard) at every
+ * keystroke of the message is computed once.  A proposed plugboard is
+ * then scored by re-decrypting only the keystrokes whose ciphertext
+ * letter, or whose letter coming out of the rotors, is one whose plug
+ * changed, and adjusting the score by the letters and n-grams covering
+ * those keystrokes.  A proposal is either committed, becoming the
+ * plugboard against which later proposals are compared, or discarded
+ * at no further cost by the next proposal.  A hill-climb that changes
+ * one pair at a time thus does work proportional to the number of
+ * keystrokes involving the letters of that pair, rather than a full
+ * decryption through every rotor.
+ *
+ * @author Bradley Tian
+ */
+class PlugboardScorer {
+
+    /**
+     * A scorer for the first LENGTH indices of CIPHER, encrypted by
+     * ENGINE from its current rotor positions, with n-grams scored by
+     * MODEL, which may be null if only the index of coincidence is
+     * wanted.  ENGINE's rotors are advanced past the message.  The
+     * plugboard is initially empty and the measure INDEX_OF_COINCIDENCE.
+     */
+    PlugboardScorer(CompiledMachine engine, int[] cipher, int length,
+                    LanguageModel model) {
+        _size = engine.size();
+        _length = length;
+        _model = model;
+        _cipher = Arrays.copyOf(cipher, length);
+        _cores = new int[length * _size];
+        for (int i = 0, row = 0; i < length; i++, row += _size) {
+            engine.skip(1);
+            for (int c = 0; c < _size; c++) {
+                _cores[row + c] = engine.scramble(c);
+            }
+        }
+
+        _plugs = new int[_size];
+        _proposed = new int[_size];
+        for (int c = 0; c < _size; c++) {
+            _plugs[c] = _proposed[c] = c;
+        }
+        _byCipherStart = new int[_size + 1];
+        for (int i = 0; i < length; i++) {
+            _byCipherStart[_cipher[i] + 1] += 1;
+        }
+        for (int c = 0; c < _size; c++) {
+            _byCipherStart[c + 1] += _byCipherStart[c];
+        }
+        _byCipher = new int[length];
+        int[] next = Arrays.copyOf(_byCipherStart, _size);
+        for (int i = 0; i < length; i++) {
+            _byCipher[next[_cipher[i]]++] = i;
+        }
+
+        _middle = new int[length];
+        _byMiddle = new int[_size * length];
+        _middleCount = new int[_size];
+        _middleSlot = new int[length];
+        for (int i = 0; i < length; i++) {
+            int m = _cores[i * _size + _cipher[i]];
+            _middle[i] = m;
+            _middleSlot[i] = _middleCount[m];
+            _byMiddle[m * length + _middleCount[m]++] = i;
+        }
+        _text = _middle.clone();
+        _trial = _middle.clone();
+        _counts = new int[_size];
+
+        _marks = new int[length];
+        _starts = new int[length];
+        _affected = new int[length];
+        _affectedMiddle = new int[length];
+        setMeasure(INDEX_OF_COINCIDENCE);
+    }
+
+    /** Return the number of keystrokes in my message. */
+    int length() {
+        return _length;
+    }
+
+    /** Score decryptions by MEASURE: INDEX_OF_COINCIDENCE, BIGRAMS or
+     *  TRIGRAMS, the latter two requiring a model.  Discards any
+     *  proposal. */
+    void setMeasure(int measure) {
+        if (measure != INDEX_OF_COINCIDENCE && _model == null) {
+            throw error("No language model.");
+        }
+        discard();
+        _measure = measure == TRIGRAMS && !_model.hasTrigrams()
+                ? BIGRAMS : measure;
+        _span = _measure == TRIGRAMS ? 3 : 2;
+        Arrays.fill(_counts, 0);
+        _coincidences = 0;
+        for (int i = 0; i < _length; i++) {
+            _coincidences += 2L * _counts[_text[i]];
+            _counts[_text[i]] += 1;
+        }
+        _score = 0;
+        if (_measure == INDEX_OF_COINCIDENCE) {
+            _score = indexOfCoincidence(_coincidences);
+        } else {
+            for (int s = 0; s + _span <= _length; s++) {
+                _score += ngram(_text, s);
+            }
+        }
+        _proposedScore = _score;
+    }
+
+    /** Return the decryption of my message under the last committed
+     *  plugboard, as alphabet indices.  The array is mine and must not
+     *  be modified. */
+    int[] text() {
+        return _text;
+    }
+
+    /**
+     * Propose the plugboard PLUGS, which maps each index in the range
+     * 0..alphabet size - 1 to the index it is plugged to, discarding any
+     * previous proposal, and return its score.  Only the keystrokes
+     * affected by the difference from the committed plugboard are
+     * re-decrypted.
+     */
+    double propose(int[] plugs) {
+        discard();
+        nextStamp();
+        int affected = 0;
+        for (int c = 0; c < _size; c++) {
+            _proposed[c] = plugs[c];
+            if (plugs[c] == _plugs[c]) {
+                continue;
+            }
+            for (int k = _byCipherStart[c]; k < _byCipherStart[c + 1];
+                 k++) {
+                affected = mark(_byCipher[k], affected);
+            }
+            for (int k = 0, base = c * _length; k < _middleCount[c]; k++) {
+                affected = mark(_byMiddle[base + k], affected);
+            }
+        }
+        _pending = affected;
+        _rescored += affected;
+        for (int k = 0; k < affected; k++) {
+            int i = _affected[k];
+            int m = _cores[i * _size + plugs[_cipher[i]]];
+            _affectedMiddle[k] = m;
+            _trial[i] = plugs[m];
+        }
+
+        if (_measure == INDEX_OF_COINCIDENCE) {
+            long coincidences = _coincidences;
+            for (int k = 0; k < affected; k++) {
+                int i = _affected[k];
+                int old = _text[i];
+                int t = _trial[i];
+                if (t != old) {
+                    _counts[old] -= 1;
+                    coincidences -= 2L * _counts[old];
+                    coincidences += 2L * _counts[t];
+                    _counts[t] += 1;
+                }
+            }
+            _proposedCoincidences = coincidences;
+            _proposedScore = indexOfCoincidence(coincidences);
+        } else {
+            nextStamp();
+            double delta = 0;
+            for (int k = 0; k < affected; k++) {
+                int p = _affected[k];
+                for (int s = Math.max(0, p - _span + 1);
+                     s <= p && s + _span <= _length; s++) {
+                    if (_starts[s] != _stamp) {
+                        _starts[s] = _stamp;
+                        delta += ngram(_trial, s) - ngram(_text, s);
+                    }
+                }
+            }
+            _proposedScore = _score + delta;
+        }
+        return _proposedScore;
+    }
+
+    /** Make the last plugboard proposed the committed plugboard. */
+    void commit() {
+        for (int k = 0; k < _pending; k++) {
+            int i = _affected[k];
+            int m = _affectedMiddle[k];
+            if (m != _middle[i]) {
+                moveMiddle(i, m);
+            }
+            _text[i] = _trial[i];
+        }
+        _pending = 0;
+        System.arraycopy(_proposed, 0, _plugs, 0, _size);
+        if (_measure == INDEX_OF_COINCIDENCE) {
+            _coincidences = _proposedCoincidences;
+        }
+        _score = _proposedScore;
+    }
+
+    /** Return the score of the committed plugboard by my measure. */
+    double score() {
+        return _score;
+    }
+
+    /** Return the total number of keystrokes re-decrypted by
+     *  proposals. */
+    long rescored() {
+        return _rescored;
+    }
+
+    /** Undo the effects of the last proposal, if not committed. */
+    private void discard() {
+        for (int k = 0; k < _pending; k++) {
+            int i = _affected[k];
+            if (_measure == INDEX_OF_COINCIDENCE && _trial[i] != _text[i]) {
+                _counts[_trial[i]] -= 1;
+                _counts[_text[i]] += 1;
+            }
+            _trial[i] = _text[i];
+        }
+        _pending = 0;
+        System.arraycopy(_plugs, 0, _proposed, 0, _size);
+        _proposedScore = _score;
+    }
+
+    /** Return the index of coincidence of a decryption the sum of whose
+     *  letter counts times those counts less one is COINCIDENCES. */
+    private double indexOfCoincidence(long coincidences) {
+        if (_length < 2) {
+            return 0;
+        }
+        return (double) coincidences / ((long) _length * (_length - 1));
+    }
+
+    /** Return the log probability of the n-gram of my measure in TEXT
+     *  starting at S. */
+    private double ngram(int[] text, int s) {
+        if (_span == 2) {
+            return _model.bigram(text[s], text[s + 1]);
+        }
+        return _model.trigram(text[s], text[s + 1], text[s + 2]);
+    }
+
+    /** Add keystroke I to _affected, whose first COUNT entries are
+     *  filled, if not already there, and return the new count. */
+    private int mark(int i, int count) {
+        if (_marks[i] != _stamp) {
+            _marks[i] = _stamp;
+            _affected[count++] = i;
+        }
+        return count;
+    }
+
+    /** Start a new marking, so that no keystroke or n-gram is marked. */
+    private void nextStamp() {
+        if (_stamp == Integer.MAX_VALUE) {
+            Arrays.fill(_marks, 0);
+            Arrays.fill(_starts, 0);
+            _stamp = 0;
+        }
+        _stamp += 1;
+    }
+
+    /** Record that the letter coming out of the rotors at keystroke I
+     *  is now M. */
+    private void moveMiddle(int i, int m) {
+        int old = _middle[i];
+        int last = _byMiddle[old * _length + --_middleCount[old]];
+        _byMiddle[old * _length + _middleSlot[i]] = last;
+        _middleSlot[last] = _middleSlot[i];
+        _middleSlot[i] = _middleCount[m];
+        _byMiddle[m * _length + _middleCount[m]++] = i;
+        _middle[i] = m;
+    }
+
+    /** Measure scoring decryptions by their index of coincidence. */
+    static final int INDEX_OF_COINCIDENCE = 0;
+
+    /** Measure scoring decryptions by their bigram log-likelihood. */
+    static final int BIGRAMS = 1;
+
+    /** Measure scoring decryptions by their trigram log-likelihood, or
+     *  their bigram log-likelihood if the model has no trigrams. */
+    static final int TRIGRAMS = 2;
+
+    /** The size of the alphabet. */
+    private final int _size;
+
+    /** The number of keystrokes in my message. */
+    private final int _length;
+
+    /** The model scoring n-grams, or null. */
+    private final LanguageModel _model;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** The rotor core permutation at each keystroke, indexed by
+     *  keystroke * size + input. */
+    private final int[] _cores;
+
+    /** The committed plugboard. */
+    private final int[] _plugs;
+
+    /** The last plugboard proposed. */
+    private final int[] _proposed;
+
+    /** The start in _byCipher of the keystrokes with each ciphertext
+     *  letter, and the number of keystrokes. */
+    private final int[] _byCipherStart;
+
+    /** The keystrokes, ordered by ciphertext letter. */
+    private final int[] _byCipher;
+
+    /** The letter coming out of the rotors at each keystroke under the
+     *  committed plugboard. */
+    private final int[] _middle;
+
+    /** The keystrokes whose letter coming out of the rotors is M are
+     *  the first _middleCount[M] entries of _byMiddle from M * length. */
+    private final int[] _byMiddle;
+
+    /** The number of keystrokes coming out of the rotors as each
+     *  letter. */
+    private final int[] _middleCount;
+
+    /** The index of each keystroke within its list in _byMiddle. */
+    private final int[] _middleSlot;
+
+    /** The decryption under the committed plugboard. */
+    private final int[] _text;
+
+    /** The decryption under the proposed plugboard. */
+    private final int[] _trial;
+
+    /** Number of occurrences of each letter in _trial, if my measure is
+     *  INDEX_OF_COINCIDENCE. */
+    private final int[] _counts;
+
+    /** The sum over letters of count * (count - 1) in _text. */
+    private long _coincidences;
+
+    /** The same sum in _trial. */
+    private long _proposedCoincidences;
+
+    /** My measure. */
+    private int _measure;
+
+    /** The length of the n-grams of my measure. */
+    private int _span;
+
+    /** The score of _text. */
+    private double _score;
+
+    /** The score of _trial. */
+    private double _proposedScore;
+
+    /** The number of the current marking. */
+    private int _stamp;
+
+    /** The marking in which each keystroke was last marked affected. */
+    private final int[] _marks;
+
+    /** The marking in which the n-gram starting at each keystroke was
+     *  last rescored. */
+    private final int[] _starts;
+
+    /** The keystrokes affected by the last proposal. */
+    private final int[] _affected;
+
+    /** The letter coming out of the rotors at each keystroke of
+     *  _affected under the proposed plugboard. */
+    private final int[] _affectedMiddle;
+
+    /** The number of entries of _affected not yet committed or
+     *  discarded. */
+    private int _pending;
+
+    /** Total keystrokes re-decrypted. */
+    private long _rescored;
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /**
@@ -18,6 +20,7 @@ class Rotor {
         _position = 0;
         _notches = "";
         _newNotches = _notches;
+        _notchMask = new long[(perm.size() + Long.SIZE - 1) / Long.SIZE];
     }
 
     /**
@@ -95,6 +98,21 @@ class Rotor {
     void reset() {
         _position = 0;
         _newNotches = _notches;
+        maskNotches();
+    }
+
+    /**
+     * Return a copy of me in my initial state, sharing my permutation,
+     * which may be modified independently of me.
+     */
+    Rotor copy() {
+        if (reflecting()) {
+            return new Reflector(name(), permutation());
+        } else if (rotates()) {
+            return new MovingRotor(name(), permutation(), _notches);
+        } else {
+            return new FixedRotor(name(), permutation());
+        }
     }
 
     /**
@@ -114,6 +132,7 @@ class Rotor {
             newNotches += alphabet().toChar(index);
         }
         _newNotches = newNotches;
+        maskNotches();
     }
 
     /**
@@ -121,12 +140,8 @@ class Rotor {
      * according to my permutation.
      */
     int convertForward(int p) {
-        int result = _permutation.wrap(_permutation.permute
+        return _permutation.wrap(_permutation.permute
                 (_permutation.wrap(p + _position)) - _position);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
-        return result;
     }
 
     /**
@@ -134,12 +149,8 @@ class Rotor {
      * according to the inverse of my permutation.
      */
     int convertBackward(int e) {
-        int result = _permutation.wrap(_permutation.invert
+        return _permutation.wrap(_permutation.invert
                 (_permutation.wrap(e + _position)) - _position);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
-        return result;
     }
 
     /**
@@ -150,13 +161,31 @@ class Rotor {
         return _newNotches;
     }
 
+    /**
+     * Returns the positions of the notches at ring setting 0, as a
+     * string giving the letters on the ring at which they occur.
+     */
+    String baseNotches() {
+        return _notches;
+    }
+
     /**
      * Returns true iff I am positioned to allow the rotor to my left
      * to advance.
      */
     boolean atNotch() {
-        return _newNotches.indexOf(
-                _permutation.alphabet().toChar(_position)) != -1;
+        return (_notchMask[_position >>> LOG_WORD] & (1L << _position)) != 0;
+    }
+
+    /**
+     * Set _notchMask to the set of positions in _newNotches.
+     */
+    protected void maskNotches() {
+        Arrays.fill(_notchMask, 0);
+        for (int i = 0; i < _newNotches.length(); i++) {
+            int posn = alphabet().toInt(_newNotches.charAt(i));
+            _notchMask[posn >>> LOG_WORD] |= 1L << posn;
+        }
     }
 
     /**
@@ -188,5 +217,11 @@ class Rotor {
 
     /** The set of notches turned by ring settings. */
     protected String _newNotches;
+
+    /** The positions in _newNotches, as a bitset indexed by position. */
+    protected final long[] _notchMask;
+
+    /** Log base 2 of the number of bits in a word of _notchMask. */
+    private static final int LOG_WORD = 6;
 }
 
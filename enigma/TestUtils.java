@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -126,4 +127,50 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** A configuration of 5 slots and 3 pawls whose rotors are moving
+     *  rotors I, II, III, IV and VI, fixed rotor Beta and reflector B,
+     *  as in NAVALA. */
+    static final String CONFIG = String.format(
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ%n5 3%n"
+            + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)%n"
+            + " II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)%n"
+            + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)%n"
+            + " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)%n"
+            + " VI MZM    (AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)%n"
+            + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)%n"
+            + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) "
+            + "(MP) (RX) (SZ) (TV)%n");
+
+    /** The notches of the moving rotors of CONFIG. */
+    static final HashMap<String, String> NOTCHES = new HashMap<>();
+    static {
+        NOTCHES.put("I", "Q");
+        NOTCHES.put("II", "E");
+        NOTCHES.put("III", "V");
+        NOTCHES.put("IV", "J");
+        NOTCHES.put("VI", "ZM");
+    }
+
+    /** Return a machine with NUMROTORS slots and NUMPAWLS pawls whose
+     *  available rotors are the rotors of CONFIG named NAMES. */
+    static Machine machine(int numRotors, int numPawls, String... names) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : names) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (name.equals("B")) {
+                rotors.add(new Reflector(name, perm));
+            } else if (NOTCHES.containsKey(name)) {
+                rotors.add(new MovingRotor(name, perm, NOTCHES.get(name)));
+            } else {
+                rotors.add(new FixedRotor(name, perm));
+            }
+        }
+        return new Machine(UPPER, numRotors, numPawls, rotors);
+    }
+
+    /** Return the machine described by CONFIG, with no rotors
+     *  inserted. */
+    static Machine machine() {
+        return machine(5, 3, "B", "Beta", "I", "II", "III", "IV", "VI");
+    }
 }
@@ -0,0 +1,197 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A Tracer that writes each keystroke as a line of text in the format
+ * "[SETTINGS] C0 -> C1 -> ... -> CN".  Keystrokes are recorded as
+ * integers into fixed-size batches, which a background thread formats
+ * and writes, so that tracing a long message costs the converting
+ * thread little more than copying each keystroke's arrays.
+ *
+ * @author Bradley Tian
+ */
+class TraceWriter implements Tracer {
+
+    /** A tracer writing the keystrokes of machines with alphabet
+     *  ALPHABET to OUTPUT. */
+    TraceWriter(Alphabet alphabet, Writer output) {
+        _alphabet = alphabet;
+        _output = output;
+        _full = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        _empty = new ArrayBlockingQueue<>(QUEUE_SIZE + 1);
+        _thread = new Thread(this::drain, "enigma-trace");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    @Override
+    public void keystroke(int[] settings, int[] path) {
+        int length = 2 + settings.length + path.length;
+        if (_batch == null || _used + length > _batch.length) {
+            send();
+            _batch = _empty.poll();
+            if (_batch == null || _batch.length < length) {
+                _batch = new int[Math.max(BATCH_SIZE, length)];
+            }
+        }
+        _batch[_used++] = settings.length;
+        _batch[_used++] = path.length;
+        System.arraycopy(settings, 0, _batch, _used, settings.length);
+        _used += settings.length;
+        System.arraycopy(path, 0, _batch, _used, path.length);
+        _used += path.length;
+    }
+
+    /**
+     * Write out all keystrokes recorded so far and stop the background
+     * thread.  No keystrokes may be recorded afterwards.
+     */
+    void close() {
+        send();
+        put(new int[0]);
+        try {
+            _thread.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        if (_failure instanceof IOException) {
+            throw error("%s", _failure.getMessage());
+        } else if (_failure != null) {
+            throw error("trace failed: %s", _failure);
+        }
+    }
+
+    /** Queue the current batch for writing, if it is not empty. */
+    private void send() {
+        if (_batch != null && _used > 0) {
+            int[] batch = _batch;
+            if (_used < batch.length) {
+                batch[_used] = -1;
+            }
+            put(batch);
+            _batch = null;
+            _used = 0;
+        }
+    }
+
+    /** Add BATCH to the queue of batches to be written. */
+    private void put(int[] batch) {
+        try {
+            _full.put(batch);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("trace interrupted");
+        }
+    }
+
+    /** Format and write batches until an empty one arrives.  After an
+     *  error, later batches are taken and discarded, so that the
+     *  converting thread never waits on a full queue. */
+    private void drain() {
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            int[] batch;
+            try {
+                batch = _full.take();
+            } catch (InterruptedException excp) {
+                fail(excp);
+                continue;
+            }
+            if (batch.length == 0) {
+                break;
+            }
+            if (_failure == null) {
+                try {
+                    format(batch, text);
+                    _output.append(text);
+                } catch (IOException | RuntimeException excp) {
+                    fail(excp);
+                }
+                text.setLength(0);
+            }
+            _empty.offer(batch);
+        }
+        if (_failure == null) {
+            try {
+                _output.flush();
+            } catch (IOException excp) {
+                fail(excp);
+            }
+        }
+    }
+
+    /** Record EXCP as the error that stopped tracing, unless one has
+     *  been recorded already. */
+    private void fail(Exception excp) {
+        if (_failure == null) {
+            _failure = excp;
+        }
+    }
+
+    /** Append the keystrokes recorded in BATCH to TEXT. */
+    private void format(int[] batch, StringBuilder text) {
+        int k = 0;
+        while (k < batch.length && batch[k] != -1) {
+            int settings = batch[k++];
+            int path = batch[k++];
+            text.append('[');
+            for (int i = 0; i < settings; i++) {
+                text.append(toChar(batch[k++]));
+            }
+            text.append(']');
+            for (int i = 0; i < path; i++) {
+                text.append(i == 0 ? " " : " -> ")
+                        .append(toChar(batch[k++]));
+            }
+            text.append(LINE_SEPARATOR);
+        }
+    }
+
+    /** Return the character of my alphabet with index INDEX modulo its
+     *  size, as a machine converts an index outside the alphabet, such
+     *  as the -1 recorded for a parenthesis. */
+    private char toChar(int index) {
+        return _alphabet.toChar(Math.floorMod(index, _alphabet.size()));
+    }
+
+    /** Number of integers in a batch of keystrokes. */
+    static final int BATCH_SIZE = 1 << 14;
+
+    /** Maximum number of batches waiting to be written. */
+    static final int QUEUE_SIZE = 4;
+
+    /** Ends each line of trace. */
+    static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** The alphabet of the traced machine. */
+    private final Alphabet _alphabet;
+
+    /** Destination of the trace. */
+    private final Writer _output;
+
+    /** Batches waiting to be written, followed by an empty batch on
+     *  close. */
+    private final BlockingQueue<int[]> _full;
+
+    /** Written batches available for reuse. */
+    private final BlockingQueue<int[]> _empty;
+
+    /** The thread writing batches. */
+    private final Thread _thread;
+
+    /** The batch being filled, or null. */
+    private int[] _batch;
+
+    /** Number of integers used in _batch. */
+    private int _used;
+
+    /** The error that stopped tracing, if any. */
+    private volatile Exception _failure;
+}
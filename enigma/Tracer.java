@@ -0,0 +1,29 @@
+package enigma;
+
+/**
+ * Receives the path of each keystroke through a Machine, for tracing.
+ *
+ * @author Bradley Tian
+ */
+interface Tracer {
+
+    /**
+     * Record one keystroke.  SETTINGS holds the positions of rotors
+     * #1 to #(numRotors()-1) after advancing.  PATH holds the signal as
+     * an alphabet index at each stage: the input, the output of the
+     * plugboard, of each rotor from the fast rotor to the reflector, of
+     * each rotor back to the fast rotor, and of the plugboard again.
+     * Both arrays belong to the caller and are only valid during the
+     * call.
+     */
+    void keystroke(int[] settings, int[] path);
+
+    /** A Tracer that ignores every keystroke.  It is not a lambda, so
+     *  that machines that are never traced do not pay for bootstrapping
+     *  one at startup. */
+    Tracer NONE = new Tracer() {
+        @Override
+        public void keystroke(int[] settings, int[] path) {
+        }
+    };
+}
@@ -16,7 +16,14 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                KeySearchTest.class,
+                CiphertextSearchTest.class,
+                EnigmaServerTest.class,
+                BatchTest.class,
+                CompiledConfigTest.class,
+                LaneEngineTest.class,
+                GroupWriterTest.class));
     }
 
 }
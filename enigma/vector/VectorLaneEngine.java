@@ -0,0 +1,129 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A LaneEngine that converts as many messages at once as an int vector
+ * of the preferred shape has lanes.  Each lane holds the state of one
+ * message: the schedule state of its moving rotors and the wiring row
+ * of every slot.  A keystroke steps every lane with a gather from the
+ * successor table, fetches the rows of the moving rotors with gathers
+ * from the schedule, and passes all lanes' characters through the
+ * plugboard, rotors and reflector with one gather per table.  The
+ * messages of a group are transposed so that the characters of one
+ * keystroke are adjacent; a group is as long as its longest message,
+ * and shorter messages are padded.
+ *
+ * Requires a scheduled CompiledMachine and the jdk.incubator.vector
+ * module, which must be added with --add-modules jdk.incubator.vector
+ * both to compile and to run.  Compiled apart from the rest of the
+ * package, by 'make vector'; LaneEngine.create returns one only when
+ * asked, and only then.
+ *
+ * @author Bradley Tian
+ */
+class VectorLaneEngine extends LaneEngine {
+
+    /** An engine converting messages through the tables of LAYOUT,
+     *  which must be scheduled. */
+    VectorLaneEngine(CompiledMachine layout) {
+        super(layout);
+        if (!layout.scheduled()) {
+            throw error("Lane engine requires a scheduled layout.");
+        }
+    }
+
+    @Override
+    int lanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    void convert(int[][] messages, int[][] positions) {
+        int lanes = lanes();
+        CompiledMachine layout = layout();
+        int slots = layout.numSlots();
+        int size = layout.size();
+        int[] forward = layout.forwardTable();
+        int[] backward = layout.backwardTable();
+        int[] plugboard = layout.plugboardTable();
+        int[] successors = layout.successorTable();
+        int[] schedule = layout.scheduleTable();
+        int[] moving = layout.movingSlots();
+
+        CompiledMachine engine = layout.copy();
+        int[] saved = new int[engine.stateSize()];
+        int[] rows = new int[slots * lanes];
+        int[] states = new int[lanes];
+        int[] index = new int[lanes];
+        for (int first = 0; first < messages.length; first += lanes) {
+            int group = Math.min(lanes, messages.length - first);
+            int length = 0;
+            for (int lane = 0; lane < group; lane++) {
+                engine.setPositions(positions[first + lane]);
+                engine.saveState(saved, 0);
+                for (int i = 0; i < slots; i++) {
+                    rows[i * lanes + lane] = saved[i];
+                }
+                states[lane] = engine.scheduleState();
+                length = Math.max(length, messages[first + lane].length);
+            }
+            int[] text = new int[length * lanes];
+            for (int lane = 0; lane < group; lane++) {
+                int[] msg = messages[first + lane];
+                for (int t = 0; t < msg.length; t++) {
+                    text[t * lanes + lane] = Math.floorMod(msg[t], size);
+                }
+            }
+            IntVector state = IntVector.fromArray(SPECIES, states, 0);
+
+            for (int t = 0; t < length; t++) {
+                state = gather(successors, state, index);
+                IntVector base = state.mul(moving.length);
+                for (int j = 0; j < moving.length; j++) {
+                    gather(schedule, base.add(j), index)
+                            .intoArray(rows, moving[j] * lanes);
+                }
+                IntVector c = IntVector.fromArray(SPECIES, text, t * lanes);
+                c = gather(plugboard, c, index);
+                for (int i = slots - 1; i >= 0; i--) {
+                    c = gather(forward, row(rows, i).add(c), index);
+                }
+                for (int i = 1; i < slots; i++) {
+                    c = gather(backward, row(rows, i).add(c), index);
+                }
+                c = gather(plugboard, c, index);
+                c.intoArray(text, t * lanes);
+            }
+
+            for (int lane = 0; lane < group; lane++) {
+                int[] msg = messages[first + lane];
+                for (int t = 0; t < msg.length; t++) {
+                    msg[t] = text[t * lanes + lane];
+                }
+            }
+        }
+    }
+
+    /** Return the rows of SLOT in all lanes, from ROWS, which holds
+     *  those of each slot in turn. */
+    private static IntVector row(int[] rows, int slot) {
+        return IntVector.fromArray(SPECIES, rows, slot * SPECIES.length());
+    }
+
+    /** Return the elements of TABLE at the indices in the lanes of
+     *  INDICES, using INDEX, an array of one int per lane, as
+     *  scratch. */
+    private static IntVector gather(int[] table, IntVector indices,
+                                    int[] index) {
+        indices.intoArray(index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, index, 0);
+    }
+
+    /** The shape of the vectors I use. */
+    private static final VectorSpecies<Integer> SPECIES =
+            IntVector.SPECIES_PREFERRED;
+}